@@ -0,0 +1,254 @@
+/*
+ *  This file is part of the Realworld Android Library Finder.
+ *
+ *  Realworld Android Library Finder is free software: you can
+ *  redistribute it and/or modify  it under the terms of the
+ *  GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Realworld Android Library Finder  is distributed in the hope that
+ *  it will be useful, but WITHOUT ANY WARRANTY; without even the
+ *  implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Realworld Android Library Finder.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.realworldsystems.android.lib;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Precomputes the load order of the bundled libraries at build time
+ *
+ * The ordered libraries of a library directory are written into an
+ * Android resource file, together with a signature of the directory. At
+ * runtime the signature of the installed library directory is compared
+ * against the one in the resource, the precomputed order is only used if
+ * both match.
+ *
+ * @author Sjoerd van Leent
+ */
+public class BundledLibraries {
+
+    private BundledLibraries() {};
+
+    /**
+     * Computes the signature of a library directory
+     *
+     * The signature covers the name and size of every library (lib*.so) in
+     * the directory, which stay the same when the libraries are installed
+     * from the APK. Other files, such as gdbserver, are left out, as the
+     * build directory and the installed directory don't have the same
+     * ones. Modification times are not covered, as they differ between
+     * the build host and the device. The root libraries are covered as
+     * well, as they select the libraries which are part of the order.
+     *
+     * @param path The library directory
+     * @param roots The root libraries, or null if all libraries are used
+     *
+     * @return The signature as a hexadecimal string
+     *
+     * @throws FinderException if the directory can't be listed
+     */
+    public static String getSignature(String path, String[] roots) throws FinderException {
+	File dir = new File(path);
+	String[] all = dir.list();
+	if(all == null) {
+	    throw new FinderException("Could not list " + path);
+	}
+	ArrayList<String> libs = new ArrayList<String>();
+	for(int i = 0; i < all.length; i++) {
+	    if(all[i].startsWith("lib") && all[i].endsWith(".so")) libs.add(all[i]);
+	}
+	String[] names = libs.toArray(new String[libs.size()]);
+	Arrays.sort(names);
+
+	StringBuilder sb = new StringBuilder();
+	for(int i = 0; i < names.length; i++) {
+	    sb.append(names[i]).append('\0').append(new File(dir, names[i]).length()).append('\0');
+	}
+	if(roots != null) {
+	    sb.append("roots");
+	    for(int i = 0; i < roots.length; i++) {
+		sb.append('\0').append(FinderDir.toFileName(roots[i]));
+	    }
+	}
+
+	// 64-bit FNV-1a
+	long hash = 0xcbf29ce484222325L;
+	for(int k = 0; k < sb.length(); k++) {
+	    hash ^= sb.charAt(k);
+	    hash *= 0x100000001b3L;
+	}
+	return String.format("%016x", hash);
+    }
+
+    private static String escape(String s) {
+	return s.replace("&", "&amp;").replace("<", "&lt;").replace("'", "\\'");
+    }
+
+    /**
+     * Writes the resource file for a library directory
+     *
+     * Libraries the linker is expected to reject are left out.
+     *
+     * @param path The library directory
+     * @param roots The root libraries, or null to order all libraries
+     * @param output The resource file to write
+     */
+    public static void write(String path, String[] roots, File output) throws FinderException {
+	FinderDir finder = new FinderDir(path, 0);
+	finder.setRoots(roots);
+	finder.setExcludeUnloadable(true);
+	String[] deps = finder.getOrderedDependencies();
+	String signature = getSignature(path, roots);
+
+	Writer w = null;
+	try {
+	    w = new OutputStreamWriter(new FileOutputStream(output), "UTF-8");
+	    w.write("<?xml version='1.0' encoding='utf-8'?>\n");
+	    w.write("<!-- Generated by com.realworldsystems.android.lib.BundledLibraries, do not edit -->\n");
+	    w.write("<resources>\n");
+	    w.write("    <array name=\"bundled_libs\">\n");
+	    for(int i = 0; i < deps.length; i++) {
+		w.write(String.format("      <item>%s</item>\n", escape(deps[i])));
+	    }
+	    w.write("    </array>\n");
+	    w.write(String.format("    <string name=\"bundled_libs_signature\">%s</string>\n",
+				  signature));
+	    w.write("</resources>\n");
+	} catch (IOException ex) {
+	    throw new FinderException("Could not write " + output.getPath(), ex);
+	} finally {
+	    if (w != null) {
+		try {
+		    w.close();
+		} catch (IOException ex) {
+		    throw new Error(ex.getMessage());
+		}
+	    }
+	}
+    }
+
+    /**
+     * Gets the element of an Android XML file with the given name attribute
+     */
+    private static Element find(Document doc, String tag, String attr, String name) {
+	NodeList nodes = doc.getElementsByTagName(tag);
+	for(int i = 0; i < nodes.getLength(); i++) {
+	    Element e = (Element) nodes.item(i);
+	    if(name.equals(e.getAttribute(attr))) {
+		return e;
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Looks up a resource reference (example: @array/root_libs) in the
+     * resource files of a values directory
+     *
+     * @return The resource element, or null if there is none
+     */
+    private static Element findResource(File values, String ref) throws Exception {
+	int slash = ref.indexOf('/');
+	if(!ref.startsWith("@") || slash < 0) {
+	    return null;
+	}
+	String type = ref.substring(1, slash);
+	String name = ref.substring(slash + 1);
+	File[] files = values.listFiles();
+	if(files == null) {
+	    return null;
+	}
+	Arrays.sort(files);
+	for(int i = 0; i < files.length; i++) {
+	    if(!files[i].getName().endsWith(".xml")) continue;
+	    Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(files[i]);
+	    Element e = find(doc, type, "name", name);
+	    if(e != null) {
+		return e;
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Reads the root libraries from the manifest, the way QtActivity does
+     *
+     * The roots are the android.app.lib_name library followed by the array
+     * android.app.root_libs_resource_id refers to, so the manifest and the
+     * array are the only place they are listed.
+     *
+     * @param manifest The AndroidManifest.xml file
+     * @param values The res/values directory
+     *
+     * @return The root libraries, or null if root-only loading isn't enabled
+     *
+     * @throws FinderException if the files can't be read
+     */
+    public static String[] getRootLibraries(File manifest, File values) throws FinderException {
+	try {
+	    Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(manifest);
+	    Element rootLibs = find(doc, "meta-data", "android:name",
+				    "android.app.root_libs_resource_id");
+	    if(rootLibs == null) {
+		return null;
+	    }
+	    ArrayList<String> roots = new ArrayList<String>();
+	    Element libName = find(doc, "meta-data", "android:name", "android.app.lib_name");
+	    if(libName != null) {
+		String value = libName.getAttribute("android:value");
+		Element string = findResource(values, value);
+		roots.add(string == null ? value : string.getTextContent().trim());
+	    }
+	    String ref = rootLibs.getAttribute("android:resource");
+	    Element array = findResource(values, ref);
+	    if(array == null) {
+		throw new FinderException("Could not find " + ref + " in " + values.getPath());
+	    }
+	    NodeList items = array.getElementsByTagName("item");
+	    for(int i = 0; i < items.getLength(); i++) {
+		roots.add(items.item(i).getTextContent().trim());
+	    }
+	    return roots.toArray(new String[roots.size()]);
+	} catch (FinderException ex) {
+	    throw ex;
+	} catch (Exception ex) {
+	    throw new FinderException("Could not read the root libraries from " + manifest.getPath(), ex);
+	}
+    }
+
+    /**
+     * Command line entry for the build
+     */
+    public static void main(String[] args) throws FinderException {
+	if(args.length < 2) {
+	    System.err.println("Usage: BundledLibraries <Library path> <Resource file> " +
+			       "[-m <AndroidManifest.xml> <Values dir> | Root...]");
+	} else {
+	    String[] roots = null;
+	    if(args.length == 5 && args[2].equals("-m")) {
+		roots = getRootLibraries(new File(args[3]), new File(args[4]));
+	    } else if(args.length > 2) {
+		roots = new String[args.length - 2];
+		System.arraycopy(args, 2, roots, 0, roots.length);
+	    }
+	    write(args[0], roots, new File(args[1]));
+	}
+    }
+}
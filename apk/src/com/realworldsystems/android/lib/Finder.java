@@ -19,9 +19,14 @@
 
 package com.realworldsystems.android.lib;
 
+import com.realworldsystems.elf.Cache;
+import com.realworldsystems.elf.Names;
 import com.realworldsystems.elf.Reader;
-import com.realworldsystems.elf.ReaderException;
+import com.realworldsystems.elf.Relocations;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.io.File;
 
 /**
@@ -36,16 +41,31 @@ public class Finder {
      */
     protected String path;
     
-    /**
-     * The reader which is used to parse the ELF object files
-     */
-    private Reader reader;
-    
     /**
      * The string containing the path to the elf object
      */
     protected String elfPath;
 
+    /**
+     * The cache consulted before parsing an ELF object, or null
+     */
+    protected Cache cache = null;
+
+    /**
+     * The resolver of the last resolution, or null
+     */
+    Resolver resolver = null;
+
+    /**
+     * Whether libraries the linker is expected to reject are left out
+     */
+    private boolean excludeUnloadable = false;
+
+    /**
+     * The libraries left out by the last resolution
+     */
+    private ArrayList<String> excluded = new ArrayList<String>();
+
     private static ArrayList<String> knownSystemLibraries;
 
     static {
@@ -87,7 +107,8 @@ public class Finder {
 		this.path = String.format("%s%c", path, File.separatorChar);
 	    }
 	    
-	    this.reader = new Reader(elfObject);
+	    // Validates the ELF object, it is parsed once resolving starts
+	    new Reader(elfObject);
 	    this.elfPath = elfObject;
 	} catch (Exception ex) {
 	    throw new FinderException("Could not instantiate due to an exception", ex);
@@ -96,83 +117,158 @@ public class Finder {
     
     String getELFPath() { return elfPath; }
 
-    public String[] getOrderedDependencies() throws FinderException {
-	return this.getOrderedDependencies(null);
-    }
-    
     /**
-     * Gets all dependencies in the right order
+     * Sets the cache to consult before parsing an ELF object
+     *
+     * Parsed ELF objects are added to the cache, the caller is responsible
+     * for saving it.
      *
-     * If a cyclical dependency is discovered, the method with throw an exception
+     * @param cache The cache, or null to always parse
      */
-    String[] getOrderedDependencies(Finder[] parents) 
-	throws FinderException {
-	if(currentSystemLibraries != null) {
-	    if(this.currentSystemLibraries.isEmpty()) {
-		currentSystemLibraries.addAll(Finder.knownSystemLibraries);
-	    }
+    public void setCache(Cache cache) { this.cache = cache; }
+
+    /**
+     * Gets the system libraries to assume, filled with the known system
+     * libraries if none were given
+     */
+    protected ArrayList<String> getSystemLibraries() {
+	if(this.currentSystemLibraries.isEmpty()) {
+	    currentSystemLibraries.addAll(Finder.knownSystemLibraries);
 	}
+	return this.currentSystemLibraries;
+    }
 
-	String[] currentDeps = null;
-	Finder[] newParents = null;
-	if(parents != null) {
-	    newParents = new Finder[parents.length + 1];
-	    for(int k = 0; k < parents.length; k++) {
-		newParents[k] = parents[k];
-	    }
-	    newParents[parents.length] = this;
-	} else {
-	    newParents = new Finder[1];
-	    newParents[0] = this;
+    /**
+     * Creates a new resolver, which becomes the resolver of the last resolution
+     */
+    Resolver newResolver() {
+	resolver = new Resolver(path, getSystemLibraries(), cache);
+	return resolver;
+    }
+
+    /**
+     * Leaves out the libraries the linker is expected to reject
+     *
+     * A library is rejected if it has relocations of a type the linker
+     * doesn't handle. Libraries with text relocations load, but are
+     * reported.
+     *
+     * @param exclude true to leave these libraries out of the dependencies
+     */
+    public void setExcludeUnloadable(boolean exclude) { this.excludeUnloadable = exclude; }
+
+    /**
+     * Tells whether the libraries the linker is expected to reject are left out
+     */
+    public boolean isExcludeUnloadable() { return excludeUnloadable; }
+
+    /**
+     * Gets the libraries left out by the last resolution
+     */
+    public List<String> getExcluded() { return excluded; }
+
+    /**
+     * Tells whether the linker is expected to load a library
+     *
+     * The relocations are taken from the resolver, which counts them while
+     * parsing or from the cache.
+     *
+     * @param library The file name of the library
+     */
+    boolean isLoadable(String library) throws FinderException {
+	if(resolver == null) newResolver();
+	Relocations relocations = resolver.getRelocations(path + library);
+	if(relocations.hasTextRelocations()) {
+	    System.out.printf("Library has text relocations: %s\n", library);
 	}
-	try {
-	    currentDeps = this.reader.getLibraryDependencies();
-	} catch (ReaderException ex) {
-	    throw new FinderException("Could not read ELF Object", ex);
+	if(!relocations.isLoadable()) {
+	    System.out.printf("Exclude library with unsupported relocations: %s\n", library);
+	    return false;
 	}
+	return true;
+    }
 
-	ArrayList<String> newDeps = new ArrayList<String>();
-	
-	for(int i = 0; i < currentDeps.length; i++) {
-	    String currentDep = currentDeps[i];
-	    String depFullName = String.format("%s%s", path, currentDep);
-
-	    // If the current dependency is one of the parents, the process will fail
-	    if(parents != null) {
-		for(int j = 0; j < parents.length; j++) {
-		    Finder parent = parents[j];
-		    if(parent.getELFPath().equals(depFullName)) {
-			throw new FinderException("This dependency is cyclical, aborting");
-		    }
-		}
-	    }
-	    
-	    // If the current dependency is already available in the newDeps list, it
-	    // can be skipped.
-	    
-	    if(!newDeps.contains(currentDep)) {
-		// Figure out the dependencies of this library, if available
-		
-		if(new File(depFullName).exists()) {
-		    Finder f = new Finder(path, depFullName, currentSystemLibraries);
-		    String[] dependencies = 
-			f.getOrderedDependencies(newParents);
-		    for(int k = 0; k < dependencies.length; k++) {
-			if(!newDeps.contains(dependencies[k])) {
-			    newDeps.add(dependencies[k]);
-			}
-		    }
-		    if(!newDeps.contains(currentDep)) { newDeps.add(currentDep); }
-		} else {
-		    if(!currentSystemLibraries.contains(currentDep)) {
-			currentSystemLibraries.add(currentDep);
-			System.out.printf("Assume system library: %s\n", currentDep);
-		    }
+    /**
+     * Leaves out the libraries the linker is expected to reject, if enabled
+     *
+     * A library depending on a library which is left out would fail to
+     * load as well, so it is left out too, and so are its dependents.
+     *
+     * @param deps The file names of the libraries
+     * @return The libraries to load
+     */
+    String[] filterUnloadable(String[] deps) throws FinderException {
+	excluded.clear();
+	if(!excludeUnloadable) return deps;
+	if(resolver == null) newResolver();
+
+	// Merged on name ids, see Names
+	BitSet dropped = new BitSet();
+	int[] ids = new int[deps.length];
+	for(int i = 0; i < deps.length; i++) {
+	    ids[i] = Names.intern(deps[i]);
+	    if(!isLoadable(deps[i])) dropped.set(ids[i]);
+	}
+
+	// Dependencies come first, except within cyclic units, so repeat
+	// until nothing is added
+	boolean changed = !dropped.isEmpty();
+	while(changed) {
+	    changed = false;
+	    for(int i = 0; i < deps.length; i++) {
+		if(dropped.get(ids[i])) continue;
+		int[] needed = resolver.getDependencyIds(path + deps[i]);
+		for(int k = 0; k < needed.length; k++) {
+		    if(!dropped.get(needed[k])) continue;
+		    System.out.printf("Exclude library depending on %s: %s\n",
+				      Names.getName(needed[k]), deps[i]);
+		    dropped.set(ids[i]);
+		    changed = true;
+		    break;
 		}
 	    }
 	}
-	
+
+	ArrayList<String> result = new ArrayList<String>();
+	for(int i = 0; i < deps.length; i++) {
+	    if(dropped.get(ids[i])) excluded.add(deps[i]);
+	    else result.add(deps[i]);
+	}
+	return result.toArray(new String[result.size()]);
+    }
+
+    /**
+     * Gets all dependencies in the right order
+     *
+     * Libraries which depend on each other are kept together in the order of
+     * their names. If the ELF object is part of such a cycle, it is part of
+     * its own dependencies.
+     */
+    public String[] getOrderedDependencies() throws FinderException {
+	LinkedHashSet<String> newDeps = newResolver().getClosure(elfPath);
 	String[] array = new String[newDeps.size()];
-	return newDeps.toArray(array);
+	return filterUnloadable(newDeps.toArray(array));
+    }
+
+    /**
+     * Gets all dependencies in the right order, grouped into load units
+     *
+     * A load unit is a single library, or a group of libraries which depend
+     * on each other and have to be loaded together.
+     */
+    public String[][] getLoadUnits() throws FinderException {
+	String[] deps = getOrderedDependencies();
+	if(resolver == null) newResolver();
+	return resolver.getLoadUnits(deps);
+    }
+
+    /**
+     * Gets the cycles found by the last resolution
+     *
+     * @return The libraries of every cycle, ordered by name
+     */
+    public List<String[]> getCycles() {
+	if(resolver == null) return new ArrayList<String[]>();
+	return resolver.getCycles();
     }
 }
\ No newline at end of file
@@ -19,8 +19,11 @@
 
 package com.realworldsystems.android.lib;
 
+import com.realworldsystems.elf.Cache;
+import com.realworldsystems.elf.Names;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.BitSet;
 
 
 /**
@@ -30,6 +33,16 @@ import java.util.ArrayList;
  */
 public class FinderDir extends Finder {
 
+    /**
+     * The number of threads used to parse the libraries
+     */
+    private int threads = 1;
+
+    /**
+     * The file names of the root libraries, or null to use all libraries
+     */
+    private String[] roots = null;
+
     /**
      * Constructs a new finder object
      *
@@ -52,41 +65,111 @@ public class FinderDir extends Finder {
 	}
     }
 
+    /**
+     * Constructs a new finder object which parses libraries concurrently
+     *
+     * All libraries in the path are parsed on a pool of worker threads
+     * before the dependencies are ordered on the calling thread. The
+     * resulting order is identical to the one of a single thread.
+     *
+     * @param path Use this path to find dependending libraries (example: /data/data/.../lib)
+     * @param threads The number of threads to parse with, 0 to use all available processors
+     *
+     * @throws FinderException if the path or the elf object can not be found
+     */
+    public FinderDir(String path, int threads) throws FinderException {
+	this(path);
+	if(threads < 0) {
+	    throw new FinderException("The number of threads can't be negative");
+	}
+	this.threads = threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    /**
+     * Restricts the result to the given root libraries and their dependencies
+     *
+     * By default, every library in the path is part of the result. With
+     * roots set, only the roots and everything they depend upon are, in the
+     * order of the roots. Roots can be given as file name (libqgis.so) or
+     * as library name (qgis). Roots which are not in the path are skipped.
+     *
+     * @param roots The root libraries, or null to use all libraries
+     */
+    public void setRoots(String[] roots) {
+	if(roots == null) {
+	    this.roots = null;
+	    return;
+	}
+	this.roots = new String[roots.length];
+	for(int i = 0; i < roots.length; i++) {
+	    this.roots[i] = toFileName(roots[i]);
+	}
+    }
+
+    /**
+     * Converts a library name (qgis) into its file name (libqgis.so)
+     *
+     * File names are returned unchanged.
+     */
+    public static String toFileName(String library) {
+	if(library.endsWith(".so") || library.indexOf(".so.") >= 0) return library;
+	return String.format("lib%s.so", library);
+    }
+
     /**
      * Gets all dependencies in the right order
      */
     public String[] getOrderedDependencies() throws FinderException {
 	try {
-	    ArrayList<String> currentSystemLibraries = new ArrayList<String>();
-	    String[] currentDeps = new File(path).list();
+	    Resolver resolver = newResolver();
+	    String[] currentDeps = roots;
+
+	    if(currentDeps == null) {
+		currentDeps = new File(path).list();
+	    }
+
+	    // Only worthwhile if all libraries in the path are used
+	    if(threads > 1 && roots == null) {
+		ArrayList<String> fullPaths = new ArrayList<String>();
+		for(int i = 0; i < currentDeps.length; i++) {
+		    fullPaths.add(path + currentDeps[i]);
+		}
+		resolver.parseAll(fullPaths, threads, isExcludeUnloadable());
+	    }
 	    
+	    // Merged on name ids, see Names
+	    BitSet seen = new BitSet();
 	    ArrayList<String> newDeps = new ArrayList<String>();
 		
 	    for(int i = 0; i < currentDeps.length; i++) {
 		String currentDep = currentDeps[i];
+		int currentId = Names.intern(currentDep);
 	    
 		// If the current dependency is already available in the newDeps list, it
 		// can be skipped.
 	    
-		if(!newDeps.contains(currentDep)) {
+		if(!seen.get(currentId)) {
 		    // Figure out the dependencies of this library, if available
 		
 		    String depFullName = String.format("%s%s", path, currentDep);
-		    if(new File(depFullName).exists()) {
-			Finder f = new Finder(path, depFullName,
-					      currentSystemLibraries);
-			String[] dependencies = f.getOrderedDependencies();
-			for(int k = 0; k < dependencies.length; k++) {
-			    if(!newDeps.contains(dependencies[k])) {
-				newDeps.add(dependencies[k]);
-			    }
+		    if(resolver.isAvailable(depFullName)) {
+			int[] closure = resolver.getClosureIds(depFullName);
+			for(int k = 0; k < closure.length; k++) {
+			    if(seen.get(closure[k])) continue;
+			    seen.set(closure[k]);
+			    newDeps.add(Names.getName(closure[k]));
+			}
+			if(!seen.get(currentId)) {
+			    seen.set(currentId);
+			    newDeps.add(currentDep);
 			}
-			if(!newDeps.contains(currentDep)) { newDeps.add(currentDep); }
+		    } else {
+			System.out.printf("Skip missing root library: %s\n", currentDep);
 		    }
 		}
 	    }
 	    String[] array = new String[newDeps.size()];
-	    return newDeps.toArray(array);
+	    return filterUnloadable(newDeps.toArray(array));
 	} catch (FinderException ex)  {
 	    throw ex;
 	} catch (Exception ex) {
@@ -98,14 +181,41 @@ public class FinderDir extends Finder {
     /**
      * A test routine for command line scanning
      */
-    public static void main(String[] args) throws FinderException {
-	if(args.length != 1) {
-	    System.err.println("Usage: Finder <Path>");
+    public static void main(String[] args) throws Exception {
+	int threads = 1;
+	Cache cache = null;
+	String[] roots = null;
+	boolean exclude = false;
+	String path = null;
+	for(int i = 0; i < args.length; i++) {
+	    if(args[i].equals("-j") && i + 1 < args.length) {
+		threads = Integer.parseInt(args[++i]);
+	    } else if(args[i].equals("-r") && i + 1 < args.length) {
+		roots = args[++i].split(",");
+	    } else if(args[i].equals("-c") && i + 1 < args.length) {
+		cache = new Cache(new File(args[++i]));
+	    } else if(args[i].equals("-x")) {
+		exclude = true;
+	    } else if(path == null) {
+		path = args[i];
+	    } else {
+		path = null;
+		break;
+	    }
+	}
+
+	if(path == null) {
+	    System.err.println("Usage: Finder [-j <Threads>] [-r <Root,...>] [-c <Cache file>] [-x] <Path>");
 	} else {
-	    String[] deps = new FinderDir(args[0]).getOrderedDependencies();
+	    FinderDir finder = new FinderDir(path, threads);
+	    finder.setCache(cache);
+	    finder.setRoots(roots);
+	    finder.setExcludeUnloadable(exclude);
+	    String[] deps = finder.getOrderedDependencies();
 	    for(int i = 0; i < deps.length; i++) {
 		System.out.printf("Dependency: %s\n", deps[i]);
 	    }
+	    if(cache != null) cache.save();
 	}
     }
 
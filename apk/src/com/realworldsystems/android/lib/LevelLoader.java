@@ -0,0 +1,335 @@
+/*
+ *  This file is part of the Realworld Android Library Finder.
+ *
+ *  Realworld Android Library Finder is free software: you can
+ *  redistribute it and/or modify  it under the terms of the
+ *  GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Realworld Android Library Finder  is distributed in the hope that
+ *  it will be useful, but WITHOUT ANY WARRANTY; without even the
+ *  implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Realworld Android Library Finder.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.realworldsystems.android.lib;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads an ordered list of libraries level by level
+ *
+ * The libraries are grouped into the load units of the Resolver, and the
+ * units into levels: a unit without dependencies in the list is on level
+ * 0, any other unit is one level above its highest dependency. The units
+ * of one level don't depend on each other and are loaded concurrently on
+ * a small pool of worker threads, each level starts once the previous one
+ * is loaded. The libraries of a cyclic unit are loaded one after another
+ * in the order of the unit by a single worker. In serial mode the
+ * libraries are loaded one at a time in the given order instead.
+ *
+ * The load time of every library and level is recorded.
+ *
+ * @author Sjoerd van Leent
+ */
+public class LevelLoader extends Finder {
+
+    /**
+     * The file names of the libraries, in load order
+     */
+    private String[] libraries;
+
+    /**
+     * The number of worker threads, 1 loads serially
+     */
+    private int threads = 1;
+
+    /**
+     * Loads the libraries into the process
+     */
+    private NativeLoader nativeLoader = NativeLoader.SYSTEM;
+
+    /**
+     * Reads the libraries ahead into the page cache, or null
+     */
+    private Prefetcher prefetcher = null;
+
+    /**
+     * The load time of every loaded library in nanoseconds, in completion order
+     */
+    private LinkedHashMap<String, Long> timings = new LinkedHashMap<String, Long>();
+
+    /**
+     * The load time of every level in nanoseconds
+     */
+    private long[] levelTimings = new long[0];
+
+    /**
+     * The total load time in nanoseconds
+     */
+    private long totalTime = 0;
+
+    /**
+     * Constructs a new level loader
+     *
+     * @param path The path containing the libraries (example: /data/data/.../lib)
+     * @param libraries The file names of the libraries in a valid load order
+     *
+     * @throws FinderException if the path is null
+     */
+    public LevelLoader(String path, String[] libraries) throws FinderException {
+	try {
+	    if(path == null) { throw new NullPointerException("Path is null"); }
+
+	    if(path.substring(path.length() - 1).equals("/")) {
+		this.path = path;
+	    } else {
+		this.path = String.format("%s%c", path, File.separatorChar);
+	    }
+	    this.elfPath = path;
+	    this.libraries = new String[libraries.length];
+	    for(int i = 0; i < libraries.length; i++) {
+		this.libraries[i] = FinderDir.toFileName(libraries[i]);
+	    }
+	} catch (Exception ex) {
+	    throw new FinderException("Could not instantiate due to an exception", ex);
+	}
+    }
+
+    /**
+     * Sets the number of worker threads
+     *
+     * @param threads The number of threads, 0 to use all available processors,
+     *		      1 to load serially in the given order
+     */
+    public void setThreads(int threads) {
+	this.threads = threads <= 0 ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    /**
+     * Sets the loader for native libraries, System.load() by default
+     */
+    public void setNativeLoader(NativeLoader nativeLoader) {
+	this.nativeLoader = nativeLoader;
+    }
+
+    /**
+     * Sets the prefetcher to run ahead of the load, none by default
+     *
+     * The prefetcher is started by load() and stopped once all libraries
+     * are loaded.
+     */
+    public void setPrefetcher(Prefetcher prefetcher) {
+	this.prefetcher = prefetcher;
+    }
+
+    /**
+     * Gets the libraries in the given load order
+     */
+    public String[] getOrderedDependencies() { return libraries; }
+
+    /**
+     * Groups the load units of the libraries into levels of mutually
+     * independent units
+     *
+     * Dependencies outside of the list are expected to be loaded already
+     * and don't count, and so do dependencies within a cyclic unit. Within
+     * a level the given order is kept. Members of a cyclic unit which are
+     * not in the list are left out.
+     *
+     * @return The units of every level, starting with the units without dependencies
+     *
+     * @throws FinderException if a library depends on a library later in the list
+     */
+    private ArrayList<ArrayList<String[]>> getUnitLevels() throws FinderException {
+	Resolver resolver = newResolver();
+	HashMap<String, Integer> levelOf = new HashMap<String, Integer>();
+	for(int i = 0; i < libraries.length; i++) {
+	    levelOf.put(libraries[i], null);
+	}
+
+	String[][] units = resolver.getLoadUnits(libraries);
+	ArrayList<ArrayList<String[]>> levels = new ArrayList<ArrayList<String[]>>();
+	for(int u = 0; u < units.length; u++) {
+	    ArrayList<String> members = new ArrayList<String>();
+	    for(int i = 0; i < units[u].length; i++) {
+		if(levelOf.containsKey(units[u][i])) members.add(units[u][i]);
+	    }
+
+	    int level = 0;
+	    for(int i = 0; i < members.size(); i++) {
+		String[] deps = resolver.getDependencies(path + members.get(i));
+		for(int k = 0; k < deps.length; k++) {
+		    if(!levelOf.containsKey(deps[k]) || members.contains(deps[k])) continue;
+		    Integer depLevel = levelOf.get(deps[k]);
+		    if(depLevel == null) {
+			throw new FinderException(String.format("%s is loaded before its dependency %s",
+								members.get(i), deps[k]));
+		    }
+		    level = Math.max(level, depLevel.intValue() + 1);
+		}
+	    }
+	    for(int i = 0; i < members.size(); i++) {
+		levelOf.put(members.get(i), Integer.valueOf(level));
+	    }
+	    while(levels.size() <= level) levels.add(new ArrayList<String[]>());
+	    levels.get(level).add(members.toArray(new String[members.size()]));
+	}
+	return levels;
+    }
+
+    /**
+     * Groups the libraries into levels of mutually independent load units
+     *
+     * The libraries of a cyclic unit are adjacent within their level, in
+     * the order of the unit.
+     *
+     * @return The levels, starting with the libraries without dependencies
+     *
+     * @throws FinderException if a library depends on a library later in the list
+     */
+    public String[][] getLevels() throws FinderException {
+	ArrayList<ArrayList<String[]>> levels = getUnitLevels();
+	String[][] result = new String[levels.size()][];
+	for(int l = 0; l < result.length; l++) {
+	    ArrayList<String> level = new ArrayList<String>();
+	    for(String[] unit : levels.get(l)) {
+		for(int i = 0; i < unit.length; i++) level.add(unit[i]);
+	    }
+	    result[l] = level.toArray(new String[level.size()]);
+	}
+	return result;
+    }
+
+    private long loadLibrary(String library) throws FinderException {
+	if(prefetcher != null) prefetcher.loading(library);
+	long start = System.nanoTime();
+	try {
+	    nativeLoader.load(path + library);
+	} catch (UnsatisfiedLinkError err) {
+	    throw new FinderException("Could not load " + library, err);
+	}
+	return System.nanoTime() - start;
+    }
+
+    /**
+     * Loads all libraries
+     *
+     * @throws FinderException if the levels can't be computed or a library fails to load
+     */
+    public void load() throws FinderException {
+	timings.clear();
+	long start = System.nanoTime();
+	if(prefetcher != null) prefetcher.start();
+	try {
+	    if(threads <= 1) {
+		levelTimings = new long[0];
+		for(int i = 0; i < libraries.length; i++) {
+		    timings.put(libraries[i], Long.valueOf(loadLibrary(libraries[i])));
+		}
+	    } else {
+		loadLevels();
+	    }
+	} finally {
+	    if(prefetcher != null) prefetcher.stop();
+	    totalTime = System.nanoTime() - start;
+	}
+    }
+
+    private void loadLevels() throws FinderException {
+	ArrayList<ArrayList<String[]>> levels = getUnitLevels();
+	levelTimings = new long[levels.size()];
+	ExecutorService executor = Executors.newFixedThreadPool(threads);
+	try {
+	    for(int l = 0; l < levels.size(); l++) {
+		long levelStart = System.nanoTime();
+		ArrayList<String[]> units = levels.get(l);
+		ArrayList<Future<long[]>> futures = new ArrayList<Future<long[]>>();
+		for(int u = 0; u < units.size(); u++) {
+		    final String[] unit = units.get(u);
+		    futures.add(executor.submit(new Callable<long[]>() {
+			    public long[] call() throws Exception {
+				long[] times = new long[unit.length];
+				for(int i = 0; i < unit.length; i++) {
+				    times[i] = loadLibrary(unit[i]);
+				}
+				return times;
+			    }
+			}));
+		}
+
+		// Wait for the whole level, report the first failure in level order
+		FinderException failure = null;
+		for(int u = 0; u < futures.size(); u++) {
+		    String[] unit = units.get(u);
+		    try {
+			long[] times = futures.get(u).get();
+			for(int i = 0; i < unit.length; i++) {
+			    timings.put(unit[i], Long.valueOf(times[i]));
+			}
+		    } catch (ExecutionException ex) {
+			if(failure == null) {
+			    failure = ex.getCause() instanceof FinderException
+				? (FinderException)ex.getCause()
+				: new FinderException("Could not load " + unit[0], ex.getCause());
+			}
+		    }
+		}
+		if(failure != null) throw failure;
+		levelTimings[l] = System.nanoTime() - levelStart;
+	    }
+	} catch (InterruptedException ex) {
+	    throw new FinderException("Interrupted while loading libraries", ex);
+	} finally {
+	    executor.shutdownNow();
+	}
+    }
+
+    /**
+     * Gets the load time of every loaded library in nanoseconds
+     */
+    public Map<String, Long> getTimings() { return timings; }
+
+    /**
+     * Gets the load time of every level in nanoseconds, empty if loaded serially
+     */
+    public long[] getLevelTimings() { return levelTimings; }
+
+    /**
+     * Gets the total load time in nanoseconds
+     */
+    public long getTotalTime() { return totalTime; }
+
+    /**
+     * Gets a readable report of the timings of the last load
+     */
+    public String getReport() {
+	StringBuilder sb = new StringBuilder();
+	long sum = 0;
+	for(Map.Entry<String, Long> e : timings.entrySet()) {
+	    sb.append(String.format("%s: %.1f ms\n", e.getKey(), e.getValue().longValue() / 1e6));
+	    sum += e.getValue().longValue();
+	}
+	for(int l = 0; l < levelTimings.length; l++) {
+	    sb.append(String.format("Level %d: %.1f ms\n", l, levelTimings[l] / 1e6));
+	}
+	sb.append(String.format("Total: %.1f ms for %.1f ms of library loading on %d thread(s)\n",
+				totalTime / 1e6, sum / 1e6, threads));
+	if(prefetcher != null) sb.append(prefetcher.getReport());
+	return sb.toString();
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ *  This file is part of the Realworld Android Library Finder.
+ *
+ *  Realworld Android Library Finder is free software: you can
+ *  redistribute it and/or modify  it under the terms of the
+ *  GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Realworld Android Library Finder  is distributed in the hope that
+ *  it will be useful, but WITHOUT ANY WARRANTY; without even the
+ *  implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Realworld Android Library Finder.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.realworldsystems.android.lib;
+
+import com.realworldsystems.elf.Cache;
+import com.realworldsystems.elf.Reader;
+import com.realworldsystems.elf.ReaderException;
+import com.realworldsystems.elf.SymbolTable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Simulates the symbol resolution of the dynamic linker over a load order
+ *
+ * The libraries are "loaded" in the given order. Every undefined, non weak
+ * symbol of a library has to be exported by the library itself or by a
+ * library loaded before it, otherwise it is reported as missing. System
+ * libraries are taken from a system library path (a copy of /system/lib or
+ * the NDK platform libraries). A library with a NEEDED library which is
+ * neither bundled nor found there may get any symbol from it, so its
+ * symbols without a provider are reported as unresolved instead.
+ *
+ * Before Android 5.0 the linker only searches a library itself and its
+ * direct NEEDED libraries. Symbols which are only provided by another
+ * earlier loaded library are reported separately as out of scope.
+ *
+ * @author Sjoerd van Leent
+ */
+public class LinkSimulator extends Finder {
+
+    /**
+     * The outcome of the simulation for a single library
+     */
+    public static class Result {
+	private String library;
+	private ArrayList<String> missing = new ArrayList<String>();
+	private ArrayList<String> outOfScope = new ArrayList<String>();
+	private ArrayList<String> unknown = new ArrayList<String>();
+	private ArrayList<String> unresolved = new ArrayList<String>();
+
+	Result(String library) { this.library = library; }
+
+	/**
+	 * Gets the file name of the library
+	 */
+	public String getLibrary() { return library; }
+
+	/**
+	 * Gets the undefined symbols no earlier loaded library provides
+	 */
+	public List<String> getMissing() { return missing; }
+
+	/**
+	 * Gets the undefined symbols which are only provided by an earlier
+	 * loaded library which is not a direct NEEDED library
+	 */
+	public List<String> getOutOfScope() { return outOfScope; }
+
+	/**
+	 * Gets the NEEDED libraries which are neither bundled nor found in
+	 * the system library path
+	 */
+	public List<String> getUnknown() { return unknown; }
+
+	/**
+	 * Gets the undefined symbols no known library provides, which may
+	 * come from one of the unknown libraries
+	 */
+	public List<String> getUnresolved() { return unresolved; }
+
+	/**
+	 * Tells whether the library is expected to link
+	 */
+	public boolean isLinkable() { return missing.isEmpty(); }
+    }
+
+    /**
+     * The file names of the libraries, in load order
+     */
+    private String[] libraries;
+
+    /**
+     * The path containing the system libraries, or null
+     */
+    private String systemPath = null;
+
+    /**
+     * The symbol tables of the loaded libraries, by file name
+     */
+    private HashMap<String, SymbolTable> tables = new HashMap<String, SymbolTable>();
+
+    /**
+     * The first loaded library exporting a symbol, by symbol name
+     */
+    private HashMap<String, String> exports = new HashMap<String, String>();
+
+    /**
+     * Constructs a new link simulator
+     *
+     * @param path The path containing the libraries (example: /data/data/.../lib)
+     * @param libraries The file names of the libraries in load order
+     *
+     * @throws FinderException if the path is null
+     */
+    public LinkSimulator(String path, String[] libraries) throws FinderException {
+	try {
+	    if(path == null) { throw new NullPointerException("Path is null"); }
+
+	    if(path.substring(path.length() - 1).equals("/")) {
+		this.path = path;
+	    } else {
+		this.path = String.format("%s%c", path, File.separatorChar);
+	    }
+	    this.elfPath = path;
+	    this.libraries = new String[libraries.length];
+	    for(int i = 0; i < libraries.length; i++) {
+		this.libraries[i] = FinderDir.toFileName(libraries[i]);
+	    }
+	} catch (Exception ex) {
+	    throw new FinderException("Could not instantiate due to an exception", ex);
+	}
+    }
+
+    /**
+     * Sets the path containing the system libraries
+     *
+     * @param systemPath The path, or null to not resolve against system libraries
+     */
+    public void setSystemPath(String systemPath) {
+	if(systemPath != null && !systemPath.endsWith("/")) {
+	    systemPath = systemPath + File.separatorChar;
+	}
+	this.systemPath = systemPath;
+    }
+
+    /**
+     * Gets the libraries in the given load order
+     */
+    public String[] getOrderedDependencies() { return libraries; }
+
+    /**
+     * Loads the symbol table of a library and records its exports
+     *
+     * @return The symbol table, or null if the library has none
+     */
+    private SymbolTable load(String name, String fullPath) throws FinderException {
+	if(tables.containsKey(name)) return tables.get(name);
+	SymbolTable table;
+	try {
+	    table = new Reader(fullPath, cache).getSymbolTable();
+	    if(table != null) {
+		SymbolTable.Symbol[] symbols = table.getSymbols();
+		for(int i = 0; i < symbols.length; i++) {
+		    if(symbols[i].isExported() && !exports.containsKey(symbols[i].getName())) {
+			exports.put(symbols[i].getName(), name);
+		    }
+		}
+	    }
+	} catch (ReaderException ex) {
+	    throw new FinderException("Could not read symbols of " + name, ex);
+	}
+	tables.put(name, table);
+	return table;
+    }
+
+    /**
+     * Simulates loading all libraries
+     *
+     * @return The outcome for every library, in load order
+     *
+     * @throws FinderException if a library can't be read
+     */
+    public List<Result> simulate() throws FinderException {
+	tables.clear();
+	exports.clear();
+	Resolver resolver = newResolver();
+	ArrayList<Result> results = new ArrayList<Result>();
+
+	for(int i = 0; i < libraries.length; i++) {
+	    String library = libraries[i];
+	    Result result = new Result(library);
+	    results.add(result);
+
+	    // Direct NEEDED libraries, system libraries are loaded on first use
+	    String[] deps = resolver.getDependencies(path + library);
+	    ArrayList<SymbolTable> scope = new ArrayList<SymbolTable>();
+	    for(int k = 0; k < deps.length; k++) {
+		SymbolTable table = tables.get(deps[k]);
+		if(table == null && !resolver.isAvailable(path + deps[k])) {
+		    if(systemPath != null && new File(systemPath + deps[k]).exists()) {
+			table = load(deps[k], systemPath + deps[k]);
+		    } else {
+			result.unknown.add(deps[k]);
+		    }
+		}
+		if(table != null) scope.add(table);
+	    }
+
+	    SymbolTable own = load(library, path + library);
+	    if(own == null) continue;
+	    try {
+		SymbolTable.Symbol[] symbols = own.getSymbols();
+		for(int k = 0; k < symbols.length; k++) {
+		    SymbolTable.Symbol symbol = symbols[k];
+		    String name = symbol.getName();
+		    if(symbol.isDefined() || name.length() == 0 ||
+		       symbol.getBinding() == SymbolTable.Symbol.Binding.WEAK) {
+			continue;
+		    }
+		    boolean found = false;
+		    for(int s = 0; s < scope.size() && !found; s++) {
+			found = scope.get(s).isExported(name);
+		    }
+		    if(found) continue;
+		    if(!result.unknown.isEmpty()) {
+			result.unresolved.add(name);
+		    } else if(!exports.containsKey(name)) {
+			result.missing.add(name);
+		    } else {
+			result.outOfScope.add(name);
+		    }
+		}
+	    } catch (ReaderException ex) {
+		throw new FinderException("Could not read symbols of " + library, ex);
+	    }
+	}
+	return results;
+    }
+
+    /**
+     * A test routine for command line simulation
+     */
+    public static void main(String[] args) throws Exception {
+	Cache cache = null;
+	String[] roots = null;
+	String systemPath = null;
+	String path = null;
+	for(int i = 0; i < args.length; i++) {
+	    if(args[i].equals("-s") && i + 1 < args.length) {
+		systemPath = args[++i];
+	    } else if(args[i].equals("-r") && i + 1 < args.length) {
+		roots = args[++i].split(",");
+	    } else if(args[i].equals("-c") && i + 1 < args.length) {
+		cache = new Cache(new File(args[++i]));
+	    } else if(path == null) {
+		path = args[i];
+	    } else {
+		path = null;
+		break;
+	    }
+	}
+
+	if(path == null) {
+	    System.err.println("Usage: LinkSimulator [-s <System library path>] [-r <Root,...>] [-c <Cache file>] <Path>");
+	    return;
+	}
+
+	FinderDir finder = new FinderDir(path, 0);
+	finder.setCache(cache);
+	finder.setRoots(roots);
+	LinkSimulator simulator = new LinkSimulator(path, finder.getOrderedDependencies());
+	simulator.setCache(cache);
+	simulator.setSystemPath(systemPath);
+
+	int failing = 0;
+	int unknown = 0;
+	List<Result> results = simulator.simulate();
+	for(int i = 0; i < results.size(); i++) {
+	    Result result = results.get(i);
+	    for(int k = 0; k < result.getUnknown().size(); k++) {
+		System.out.printf("Unknown library needed by %s: %s\n", result.getLibrary(), result.getUnknown().get(k));
+	    }
+	    if(!result.getUnresolved().isEmpty()) {
+		System.out.printf("Unresolved in %s: %d symbols\n", result.getLibrary(), result.getUnresolved().size());
+		unknown++;
+	    }
+	    for(int k = 0; k < result.getMissing().size(); k++) {
+		System.out.printf("Missing in %s: %s\n", result.getLibrary(), result.getMissing().get(k));
+	    }
+	    for(int k = 0; k < result.getOutOfScope().size(); k++) {
+		System.out.printf("Out of scope in %s: %s\n", result.getLibrary(), result.getOutOfScope().get(k));
+	    }
+	    if(!result.isLinkable()) failing++;
+	}
+	System.out.printf("%d of %d libraries have missing symbols\n", failing, results.size());
+	if(unknown > 0) {
+	    System.out.printf("%d libraries need libraries which are neither bundled nor in the system library path\n", unknown);
+	}
+	if(cache != null) cache.save();
+    }
+}
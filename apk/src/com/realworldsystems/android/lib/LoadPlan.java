@@ -0,0 +1,357 @@
+/*
+ *  This file is part of the Realworld Android Library Finder.
+ *
+ *  Realworld Android Library Finder is free software: you can
+ *  redistribute it and/or modify  it under the terms of the
+ *  GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Realworld Android Library Finder  is distributed in the hope that
+ *  it will be useful, but WITHOUT ANY WARRANTY; without even the
+ *  implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Realworld Android Library Finder.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.realworldsystems.android.lib;
+
+import com.realworldsystems.elf.BatchResult;
+import com.realworldsystems.elf.Cache;
+import com.realworldsystems.elf.Names;
+import com.realworldsystems.elf.Reader;
+import com.realworldsystems.elf.ReaderException;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Plans the loading of the Qt libraries together with the bundled libraries
+ *
+ * QtLoader gets the Qt libraries (absolute paths, from Ministro or a local
+ * Qt installation) and the bundled libraries (file names in the lib
+ * directory) as separate lists. A Qt library which is bundled as well
+ * would be loaded twice. The plan merges both lists: Qt libraries are
+ * identified by their SONAME, or their file name without one, bundled
+ * libraries by their file name. Only the first library of a name is kept,
+ * so the Qt libraries win.
+ *
+ * Both lists are in load order already, the bundled one as resolved by
+ * the Finder. Only the Qt libraries are read, in parallel, together with
+ * the bundled libraries they depend upon, which have to be loaded ahead
+ * of them. The plan merges both lists along these dependencies without
+ * reordering either of them, so cyclic load units keep their order.
+ *
+ * The plan is handed out as the two lists again. getNativeLibraries()
+ * holds the Qt libraries and the bundled libraries they depend upon, as
+ * absolute paths. getBundledLibraries() holds the remaining bundled
+ * libraries.
+ *
+ * @author Sjoerd van Leent
+ */
+public class LoadPlan {
+
+    /**
+     * A library of the plan
+     */
+    private static class Library {
+	String fullPath;
+	String fileName;
+	boolean bundled;
+	/** The SONAME or file name */
+	int name;
+	int[] needed = new int[0];
+	/** The position in the list the library is planned from */
+	int index;
+	/** Read and planned along with the Qt libraries */
+	boolean pulled = false;
+	/** 0 = not visited, 1 = being visited, 2 = planned */
+	int state = 0;
+
+	Library(String fullPath, boolean bundled) {
+	    this.fullPath = fullPath;
+	    this.fileName = new File(fullPath).getName();
+	    this.bundled = bundled;
+	    this.name = Names.intern(this.fileName);
+	}
+    }
+
+    /**
+     * The path containing the bundled libraries
+     */
+    private String path;
+
+    /**
+     * The Qt libraries, as absolute paths
+     */
+    private String[] qtLibraries;
+
+    /**
+     * The bundled libraries, as file names
+     */
+    private String[] bundledLibraries;
+
+    private Cache cache = null;
+
+    // The plan, once made
+    private ArrayList<String> planNative = null;
+    private ArrayList<String> planBundled = null;
+    private ArrayList<String> duplicates = new ArrayList<String>();
+
+    /**
+     * Constructs a new plan
+     *
+     * @param path The path containing the bundled libraries (example: /data/data/.../lib)
+     * @param qtLibraries The Qt libraries as absolute paths in load order, or null
+     * @param bundledLibraries The bundled libraries as file names in load order, or null
+     *
+     * @throws FinderException if the path is null
+     */
+    public LoadPlan(String path, List<String> qtLibraries, String[] bundledLibraries)
+	throws FinderException {
+	if(path == null) {
+	    throw new FinderException("Could not instantiate due to an exception",
+				      new NullPointerException("Path is null"));
+	}
+	if(path.endsWith("/")) {
+	    this.path = path;
+	} else {
+	    this.path = String.format("%s%c", path, File.separatorChar);
+	}
+	this.qtLibraries = qtLibraries == null ?
+	    new String[0] : qtLibraries.toArray(new String[qtLibraries.size()]);
+	this.bundledLibraries = bundledLibraries == null ? new String[0] : bundledLibraries;
+    }
+
+    /**
+     * Sets the cache to consult before parsing an ELF object
+     *
+     * Parsed ELF objects are added to the cache, the caller is responsible
+     * for saving it.
+     *
+     * @param cache The cache, or null to always parse
+     */
+    public void setCache(Cache cache) { this.cache = cache; }
+
+    /**
+     * Gets the libraries to load first, as absolute paths in load order
+     */
+    public ArrayList<String> getNativeLibraries() throws FinderException {
+	plan();
+	return planNative;
+    }
+
+    /**
+     * Gets the bundled libraries to load after the native libraries, as
+     * file names in load order
+     */
+    public ArrayList<String> getBundledLibraries() throws FinderException {
+	plan();
+	return planBundled;
+    }
+
+    /**
+     * Gets the libraries left out because a library with the same SONAME
+     * is loaded already, as absolute paths
+     */
+    public List<String> getDuplicates() throws FinderException {
+	plan();
+	return duplicates;
+    }
+
+    /**
+     * Reads the names of libraries in parallel
+     *
+     * A Qt library is named by its SONAME from here on. A library which
+     * can't be read keeps its place, without dependencies, so the loader
+     * reports it as before.
+     */
+    private void read(List<Library> libraries, ExecutorService executor)
+	throws FinderException {
+	ArrayList<File> files = new ArrayList<File>();
+	for(Library library : libraries) files.add(new File(library.fullPath));
+	BatchResult result;
+	try {
+	    result = Reader.readAll(files, executor, cache, 0);
+	} catch (ReaderException ex) {
+	    throw new FinderException("Could not read the libraries to plan", ex);
+	}
+	for(int i = 0; i < libraries.size(); i++) {
+	    Library library = libraries.get(i);
+	    int[] needed = result.getLibraryDependencyIds().get(files.get(i));
+	    if(needed == null) {
+		System.out.printf("Plan unreadable library: %s\n", library.fullPath);
+		continue;
+	    }
+	    library.needed = needed;
+	    Integer soname = result.getSonameIds().get(files.get(i));
+	    if(!library.bundled && soname != null) library.name = soname.intValue();
+	}
+    }
+
+    /**
+     * Marks the bundled libraries the given libraries depend upon
+     *
+     * @return The bundled libraries marked
+     */
+    private static ArrayList<Library> pull(List<Library> libraries, HashMap<Integer, Library> byName) {
+	ArrayList<Library> pulled = new ArrayList<Library>();
+	for(Library library : libraries) {
+	    for(int i = 0; i < library.needed.length; i++) {
+		Library dep = byName.get(library.needed[i]);
+		if(dep != null && dep.bundled && !dep.pulled) {
+		    dep.pulled = true;
+		    pulled.add(dep);
+		}
+	    }
+	}
+	return pulled;
+    }
+
+    private synchronized void plan() throws FinderException {
+	if(planNative != null) return;
+
+	HashMap<Integer, Library> byName = new HashMap<Integer, Library>();
+	ArrayList<Library> qt = new ArrayList<Library>();
+	ArrayList<Library> bundled = new ArrayList<Library>();
+
+	ExecutorService executor =
+	    Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+	try {
+	    ArrayList<Library> read = new ArrayList<Library>();
+	    for(int i = 0; i < qtLibraries.length; i++) {
+		read.add(new Library(qtLibraries[i], false));
+	    }
+	    read(read, executor);
+
+	    // Dedupe on SONAME, the file names resolve NEEDED names as well
+	    // unless another library claims them
+	    for(Library library : read) {
+		if(byName.containsKey(library.name)) {
+		    duplicates.add(library.fullPath);
+		    continue;
+		}
+		library.index = qt.size();
+		byName.put(library.name, library);
+		qt.add(library);
+	    }
+	    for(Library library : qt) {
+		int fileName = Names.intern(library.fileName);
+		if(!byName.containsKey(fileName)) byName.put(fileName, library);
+	    }
+	    for(int i = 0; i < bundledLibraries.length; i++) {
+		Library library = new Library(path + bundledLibraries[i], true);
+		if(byName.containsKey(library.name)) {
+		    duplicates.add(library.fullPath);
+		    continue;
+		}
+		byName.put(library.name, library);
+		bundled.add(library);
+	    }
+
+	    // The bundled libraries the Qt libraries depend upon, and theirs
+	    for(ArrayList<Library> pulled = pull(qt, byName); !pulled.isEmpty();
+		pulled = pull(pulled, byName)) {
+		read(pulled, executor);
+	    }
+	} finally {
+	    executor.shutdownNow();
+	}
+
+	ArrayList<Library> pulled = new ArrayList<Library>();
+	for(Library library : bundled) {
+	    if(library.pulled) {
+		library.index = pulled.size();
+		pulled.add(library);
+	    }
+	}
+
+	ArrayList<Library> ordered = new ArrayList<Library>();
+	for(Library library : qt) {
+	    visit(library, qt, pulled, byName, ordered);
+	}
+
+	planNative = new ArrayList<String>();
+	for(Library library : ordered) {
+	    planNative.add(library.fullPath);
+	}
+	planBundled = new ArrayList<String>();
+	for(Library library : bundled) {
+	    if(!library.pulled) planBundled.add(library.fileName);
+	}
+    }
+
+    /**
+     * Plans a library
+     *
+     * The libraries before it in its own list are planned first, which
+     * covers its dependencies in that list, followed by its dependencies
+     * in the other list. A library being visited is skipped, which only
+     * happens for a cycle spanning both lists.
+     */
+    private static void visit(Library library, ArrayList<Library> qt, ArrayList<Library> pulled,
+			      HashMap<Integer, Library> byName, ArrayList<Library> ordered) {
+	if(library.state != 0) return;
+	library.state = 1;
+	ArrayList<Library> list = library.bundled ? pulled : qt;
+	for(int i = 0; i < library.index; i++) {
+	    visit(list.get(i), qt, pulled, byName, ordered);
+	}
+	for(int i = 0; i < library.needed.length; i++) {
+	    Library dep = byName.get(library.needed[i]);
+	    if(dep != null && dep.bundled != library.bundled) {
+		visit(dep, qt, pulled, byName, ordered);
+	    }
+	}
+	library.state = 2;
+	ordered.add(library);
+    }
+
+    /**
+     * A test routine for command line planning
+     */
+    public static void main(String[] args) throws Exception {
+	Cache cache = null;
+	String qt = null;
+	String path = null;
+	for(int i = 0; i < args.length; i++) {
+	    if(args[i].equals("-c") && i + 1 < args.length) {
+		cache = new Cache(new File(args[++i]));
+	    } else if(args[i].equals("-q") && i + 1 < args.length) {
+		qt = args[++i];
+	    } else if(path == null) {
+		path = args[i];
+	    } else {
+		path = null;
+		break;
+	    }
+	}
+
+	if(path == null) {
+	    System.err.println("Usage: LoadPlan [-q <Qt library path,...>] [-c <Cache file>] <Path>");
+	} else {
+	    FinderDir finder = new FinderDir(path);
+	    finder.setCache(cache);
+	    LoadPlan plan = new LoadPlan(path, qt == null ? null : Arrays.asList(qt.split(",")),
+					 finder.getOrderedDependencies());
+	    plan.setCache(cache);
+	    for(String lib : plan.getNativeLibraries()) {
+		System.out.printf("Native: %s\n", lib);
+	    }
+	    for(String lib : plan.getBundledLibraries()) {
+		System.out.printf("Bundled: %s\n", lib);
+	    }
+	    for(String lib : plan.getDuplicates()) {
+		System.out.printf("Duplicate: %s\n", lib);
+	    }
+	    if(cache != null) cache.save();
+	}
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ *  This file is part of the Realworld Android Library Finder.
+ *
+ *  Realworld Android Library Finder is free software: you can
+ *  redistribute it and/or modify  it under the terms of the
+ *  GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Realworld Android Library Finder  is distributed in the hope that
+ *  it will be useful, but WITHOUT ANY WARRANTY; without even the
+ *  implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Realworld Android Library Finder.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.realworldsystems.android.lib;
+
+/**
+ * Loads a native library into the process
+ *
+ * @author Sjoerd van Leent
+ */
+public interface NativeLoader {
+
+    /**
+     * Loads libraries through System.load()
+     */
+    public static final NativeLoader SYSTEM = new NativeLoader() {
+	    public void load(String fullPath) {
+		System.load(fullPath);
+	    }
+	};
+
+    /**
+     * Loads the library
+     *
+     * @param fullPath The full path to the library
+     *
+     * @throws UnsatisfiedLinkError if the library can't be loaded
+     */
+    void load(String fullPath);
+}
@@ -0,0 +1,233 @@
+/*
+ *  This file is part of the Realworld Android Library Finder.
+ *
+ *  Realworld Android Library Finder is free software: you can
+ *  redistribute it and/or modify  it under the terms of the
+ *  GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Realworld Android Library Finder  is distributed in the hope that
+ *  it will be useful, but WITHOUT ANY WARRANTY; without even the
+ *  implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Realworld Android Library Finder.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.realworldsystems.android.lib;
+
+import com.realworldsystems.elf.Cache;
+import com.realworldsystems.elf.ProgramHeader;
+import com.realworldsystems.elf.Reader;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Reads libraries into the page cache ahead of loading them
+ *
+ * A background thread maps the PT_LOAD segments of the libraries in load
+ * order and loads them into memory, so the dynamic linker finds them
+ * resident instead of faulting them in from flash. The prefetcher stays
+ * at most a given number of libraries ahead of the library being loaded,
+ * which the loader reports through loading().
+ *
+ * A library counts as a hit if it was prefetched completely when its turn
+ * came.
+ *
+ * @author Sjoerd van Leent
+ */
+public class Prefetcher implements Runnable {
+
+    /**
+     * The path containing the libraries, ending with a separator
+     */
+    private String path;
+
+    /**
+     * The file names of the libraries, in load order
+     */
+    private String[] libraries;
+
+    /**
+     * The position of every library in the load order
+     */
+    private HashMap<String, Integer> positions = new HashMap<String, Integer>();
+
+    /**
+     * The maximum number of libraries to be ahead of the loader
+     */
+    private int window;
+
+    /**
+     * The cache consulted for the program headers, or null
+     */
+    private Cache cache = null;
+
+    /**
+     * The libraries which are prefetched completely
+     */
+    private HashSet<String> prefetched = new HashSet<String>();
+
+    /**
+     * The highest position the loader reported, -1 before loading starts
+     */
+    private int loading = -1;
+
+    private boolean stopped = false;
+    private Thread thread = null;
+    private int hits = 0;
+    private int misses = 0;
+    private long bytes = 0;
+
+    /**
+     * Constructs a new prefetcher
+     *
+     * @param path The path containing the libraries (example: /data/data/.../lib)
+     * @param libraries The file names of the libraries, in load order
+     * @param window The maximum number of libraries to be ahead of the loader
+     */
+    public Prefetcher(String path, String[] libraries, int window) {
+	this.path = path.endsWith("/") ? path : path + File.separatorChar;
+	this.libraries = new String[libraries.length];
+	for(int i = 0; i < libraries.length; i++) {
+	    this.libraries[i] = FinderDir.toFileName(libraries[i]);
+	    positions.put(this.libraries[i], Integer.valueOf(i));
+	}
+	this.window = Math.max(1, window);
+    }
+
+    /**
+     * Sets the cache to consult for the program headers
+     */
+    public void setCache(Cache cache) { this.cache = cache; }
+
+    /**
+     * Starts prefetching on a background thread
+     */
+    public synchronized void start() {
+	if(thread != null) return;
+	thread = new Thread(this, "Prefetcher");
+	thread.setPriority(Thread.MIN_PRIORITY);
+	thread.start();
+    }
+
+    /**
+     * Stops prefetching
+     */
+    public synchronized void stop() {
+	stopped = true;
+	notifyAll();
+    }
+
+    /**
+     * Reports that the loader is about to load a library
+     *
+     * @param library The library name or file name
+     */
+    public synchronized void loading(String library) {
+	String name = FinderDir.toFileName(library);
+	Integer position = positions.get(name);
+	if(position == null) return;
+
+	if(prefetched.contains(name)) hits++;
+	else misses++;
+
+	if(position.intValue() > loading) {
+	    loading = position.intValue();
+	    notifyAll();
+	}
+    }
+
+    /**
+     * Waits until the library at the given position is within the window
+     *
+     * @return false if prefetching is stopped
+     */
+    private synchronized boolean awaitWindow(int position) {
+	while(!stopped && position - loading > window) {
+	    try {
+		wait();
+	    } catch (InterruptedException ex) {
+		return false;
+	    }
+	}
+	return !stopped;
+    }
+
+    /**
+     * Reads the PT_LOAD segments of a library into the page cache
+     */
+    private void prefetch(String library) throws Exception {
+	File file = new File(path + library);
+	ProgramHeader header = new Reader(file, cache).getProgramHeader();
+	RandomAccessFile raf = new RandomAccessFile(file, "r");
+	try {
+	    FileChannel channel = raf.getChannel();
+	    long size = channel.size();
+	    for(int i = 0; i < header.size(); i++) {
+		ProgramHeader.Entry entry = header.getEntry(i);
+		if(entry.getType() != ProgramHeader.Entry.Type.LOAD) continue;
+		long offset = entry.getOffset() & 0xFFFFFFFFL;
+		long length = Math.min(entry.getFileSZ() & 0xFFFFFFFFL, size - offset);
+		if(length <= 0) continue;
+		// load() advises the kernel and touches every page of the segment
+		channel.map(FileChannel.MapMode.READ_ONLY, offset, length).load();
+		synchronized(this) { bytes += length; }
+	    }
+	} finally {
+	    raf.close();
+	}
+    }
+
+    public void run() {
+	for(int i = 0; i < libraries.length; i++) {
+	    if(!awaitWindow(i)) return;
+	    synchronized(this) {
+		// Skip libraries whose turn has passed already
+		if(i < loading) continue;
+	    }
+	    try {
+		prefetch(libraries[i]);
+		synchronized(this) { prefetched.add(libraries[i]); }
+	    } catch (Exception ex) {
+		System.out.printf("Could not prefetch %s: %s\n", libraries[i], ex.getMessage());
+	    }
+	}
+    }
+
+    /**
+     * Gets the number of libraries which were resident when their turn came
+     */
+    public synchronized int getHits() { return hits; }
+
+    /**
+     * Gets the number of libraries which were not resident when their turn came
+     */
+    public synchronized int getMisses() { return misses; }
+
+    /**
+     * Gets the fraction of libraries which were resident when their turn came
+     */
+    public synchronized double getHitRate() {
+	return hits + misses == 0 ? 0 : (double)hits / (hits + misses);
+    }
+
+    /**
+     * Gets the number of bytes prefetched
+     */
+    public synchronized long getBytes() { return bytes; }
+
+    /**
+     * Gets a readable report of the prefetch metrics
+     */
+    public synchronized String getReport() {
+	return String.format("Prefetch: %d hits, %d misses (%.0f%%), %.1f MB read ahead with a window of %d\n",
+			     hits, misses, getHitRate() * 100, bytes / 1048576.0, window);
+    }
+}
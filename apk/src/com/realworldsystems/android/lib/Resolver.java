@@ -0,0 +1,562 @@
+/*
+ *  This file is part of the Realworld Android Library Finder.
+ *
+ *  Realworld Android Library Finder is free software: you can
+ *  redistribute it and/or modify  it under the terms of the
+ *  GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  Realworld Android Library Finder  is distributed in the hope that
+ *  it will be useful, but WITHOUT ANY WARRANTY; without even the
+ *  implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *  See the GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with Realworld Android Library Finder.
+ *  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.realworldsystems.android.lib;
+
+import com.realworldsystems.elf.BatchResult;
+import com.realworldsystems.elf.Cache;
+import com.realworldsystems.elf.Names;
+import com.realworldsystems.elf.Reader;
+import com.realworldsystems.elf.ReaderException;
+import com.realworldsystems.elf.Relocations;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Resolves the ordered dependencies of libraries in a given path
+ *
+ * Every library is parsed at most once. The libraries are grouped into
+ * strongly connected components with Tarjan's algorithm, walking the graph
+ * iteratively in NEEDED order. A component is a load unit: a single library,
+ * or a group of libraries which depend on each other and are loaded
+ * together, ordered by name. Cycles therefore don't abort resolving, they
+ * are reported through getCycles().
+ *
+ * The ordered closure of each unit is memoized, so libraries shared by
+ * many parents are walked only once. The closure lists the dependencies of
+ * a unit in load order, each dependency directly preceded by its own
+ * closure. Without cycles this is the depth first post-order of the graph.
+ *
+ * Libraries in the path are identified by the id of their name in Names,
+ * the graph is walked and the closures are merged on these ids.
+ *
+ * @author Sjoerd van Leent
+ */
+class Resolver {
+
+    /**
+     * A library in the dependency graph
+     */
+    private static class Node {
+	int id;
+	String fullPath;
+	int[] deps;
+	int index;
+	int lowlink;
+	int next = 0;
+	boolean onStack = true;
+	Unit unit = null;
+
+	String getName() {
+	    return id >= 0 ? Names.getName(id) : new File(fullPath).getName();
+	}
+    }
+
+    /**
+     * A strongly connected component, loaded as one unit
+     */
+    private static class Unit {
+	Node[] nodes;
+	boolean cyclic;
+	int[] closure;
+	String[] members = null;
+	LinkedHashSet<String> closureSet = null;
+
+	String[] getMembers() {
+	    if(members == null) {
+		members = new String[nodes.length];
+		for(int i = 0; i < nodes.length; i++) members[i] = nodes[i].getName();
+	    }
+	    return members;
+	}
+    }
+
+    private static final Comparator<Node> BY_NAME = new Comparator<Node>() {
+	public int compare(Node a, Node b) {
+	    return a.getName().compareTo(b.getName());
+	}
+    };
+
+    /**
+     * The path to use for finding dependending libraries, ending with a separator
+     */
+    private String path;
+
+    /**
+     * The system libraries, which are assumed to be available
+     */
+    private List<String> systemLibraries;
+
+    /**
+     * Fast lookup mirror of systemLibraries
+     */
+    private HashSet<String> systemSet;
+
+    /**
+     * The cache consulted before parsing a library, or null
+     */
+    private Cache cache;
+
+    /**
+     * The ids of the NEEDED entries of every parsed library, by full path
+     */
+    private HashMap<String, int[]> dependencies = new HashMap<String, int[]>();
+
+    /**
+     * The relocation summaries collected while parsing, by full path
+     */
+    private HashMap<String, Relocations> relocations = new HashMap<String, Relocations>();
+
+    /**
+     * The visited libraries in the path, by name id
+     */
+    private Node[] nodes = new Node[256];
+
+    /**
+     * The visited libraries outside of the path, by full path
+     */
+    private HashMap<String, Node> outside = new HashMap<String, Node>();
+
+    /**
+     * The next index to assign to a visited library
+     */
+    private int nextIndex = 0;
+
+    /**
+     * The cyclic load units found so far, in discovery order
+     */
+    private ArrayList<String[]> cycles = new ArrayList<String[]>();
+
+    /**
+     * Whether a library in the path exists, by name id: 0 if unknown, 1 if
+     * it does, 2 if it doesn't
+     */
+    private byte[] available = new byte[256];
+
+    /**
+     * Whether a library outside of the path exists, by full path
+     */
+    private HashMap<String, Boolean> availableOutside = new HashMap<String, Boolean>();
+
+    /**
+     * The libraries assumed to be system libraries, by name id
+     */
+    private BitSet assumed = new BitSet();
+
+    /**
+     * Scratch set used while merging closures, cleared after every use
+     */
+    private BitSet seen = new BitSet();
+
+    /**
+     * Constructs a new resolver
+     *
+     * @param path The path to find dependending libraries in, ending with a separator
+     * @param systemLibraries The known system libraries, assumed libraries are added
+     * @param cache The cache consulted before parsing a library, or null
+     */
+    Resolver(String path, List<String> systemLibraries, Cache cache) {
+	this.path = path;
+	this.systemLibraries = systemLibraries;
+	this.cache = cache;
+	this.systemSet = new HashSet<String>(systemLibraries);
+    }
+
+    /**
+     * Gets the path libraries are resolved in
+     */
+    String getPath() { return path; }
+
+    /**
+     * Gets the name id of a library in the path
+     *
+     * @return The id, or -1 if the library is not directly in the path
+     */
+    private int getId(String fullPath) {
+	if(!fullPath.startsWith(path)) return -1;
+	String name = fullPath.substring(path.length());
+	if(name.length() == 0 || name.indexOf(File.separatorChar) >= 0) return -1;
+	return Names.intern(name);
+    }
+
+    private boolean isAvailable(int id) {
+	if(id >= available.length) {
+	    byte[] grown = new byte[Math.max(available.length * 2, id + 1)];
+	    System.arraycopy(available, 0, grown, 0, available.length);
+	    available = grown;
+	}
+	if(available[id] == 0) {
+	    available[id] = new File(path + Names.getName(id)).exists() ? (byte)1 : (byte)2;
+	}
+	return available[id] == 1;
+    }
+
+    /**
+     * Tells whether the given library exists
+     *
+     * @param fullPath The full path to the library
+     */
+    boolean isAvailable(String fullPath) {
+	int id = getId(fullPath);
+	if(id >= 0) return isAvailable(id);
+	Boolean exists = availableOutside.get(fullPath);
+	if(exists == null) {
+	    exists = Boolean.valueOf(new File(fullPath).exists());
+	    availableOutside.put(fullPath, exists);
+	}
+	return exists.booleanValue();
+    }
+
+    /**
+     * Gets the name ids of the NEEDED entries of a library, parsing it only once
+     *
+     * @param fullPath The full path to the library
+     */
+    int[] getDependencyIds(String fullPath) throws FinderException {
+	int[] deps = dependencies.get(fullPath);
+	if(deps == null) {
+	    try {
+		deps = new Reader(fullPath, cache).getLibraryDependencyIds();
+	    } catch (ReaderException ex) {
+		throw new FinderException("Could not read ELF Object", ex);
+	    }
+	    dependencies.put(fullPath, deps);
+	}
+	return deps;
+    }
+
+    /**
+     * Gets the relocation summary of a library, counting them only once
+     *
+     * @param fullPath The full path to the library
+     */
+    Relocations getRelocations(String fullPath) throws FinderException {
+	Relocations summary = relocations.get(fullPath);
+	if(summary == null) {
+	    try {
+		summary = new Reader(fullPath, cache).getRelocations();
+	    } catch (ReaderException ex) {
+		throw new FinderException("Could not read relocations of " + fullPath, ex);
+	    }
+	    relocations.put(fullPath, summary);
+	}
+	return summary;
+    }
+
+    /**
+     * Gets the NEEDED entries of a library, parsing it only once
+     *
+     * @param fullPath The full path to the library
+     */
+    String[] getDependencies(String fullPath) throws FinderException {
+	int[] ids = getDependencyIds(fullPath);
+	String[] deps = new String[ids.length];
+	for(int i = 0; i < ids.length; i++) deps[i] = Names.getName(ids[i]);
+	return deps;
+    }
+
+    /**
+     * Parses the NEEDED entries of many libraries concurrently
+     *
+     * The libraries are parsed through Reader.readAll() on a bounded pool of
+     * worker threads, which collect the NEEDED ids as well. The ids are
+     * stored from the calling thread once all workers are done, so
+     * resolving afterwards works on the finished graph and yields the same
+     * order as resolving serially. Libraries which fail to parse are left
+     * out, they are parsed again when resolved and report their error at
+     * that point.
+     *
+     * @param fullPaths The full paths to the libraries
+     * @param threads The number of worker threads to use
+     * @param withRelocations true to count the relocations as well, see getRelocations()
+     */
+    void parseAll(List<String> fullPaths, int threads, boolean withRelocations)
+	throws FinderException {
+	ArrayList<File> files = new ArrayList<File>();
+	for(int i = 0; i < fullPaths.size(); i++) {
+	    files.add(new File(fullPaths.get(i)));
+	}
+
+	ExecutorService executor = Executors.newFixedThreadPool(threads);
+	try {
+	    BatchResult result = Reader.readAll(files, executor, cache,
+						withRelocations ? BatchResult.RELOCATIONS : 0);
+	    for(int i = 0; i < files.size(); i++) {
+		int[] ids = result.getLibraryDependencyIds().get(files.get(i));
+		if(ids == null) continue;
+		dependencies.put(fullPaths.get(i), ids);
+		Relocations summary = result.getRelocations().get(files.get(i));
+		if(summary != null) relocations.put(fullPaths.get(i), summary);
+	    }
+	} catch (ReaderException ex) {
+	    throw new FinderException("Could not parse libraries", ex);
+	} finally {
+	    executor.shutdownNow();
+	}
+    }
+
+    private void assumeSystemLibrary(int id) {
+	if(assumed.get(id)) return;
+	assumed.set(id);
+	String name = Names.getName(id);
+	if(systemSet.add(name)) {
+	    systemLibraries.add(name);
+	    System.out.printf("Assume system library: %s\n", name);
+	}
+    }
+
+    private Node getNode(int id) {
+	return id < nodes.length ? nodes[id] : null;
+    }
+
+    private void putNode(int id, Node node) {
+	if(id >= nodes.length) {
+	    Node[] grown = new Node[Math.max(nodes.length * 2, id + 1)];
+	    System.arraycopy(nodes, 0, grown, 0, nodes.length);
+	    nodes = grown;
+	}
+	nodes[id] = node;
+    }
+
+    private Node visit(int id, String fullPath, ArrayList<Node> stack) throws FinderException {
+	Node node = new Node();
+	node.id = id;
+	node.fullPath = fullPath;
+	node.deps = getDependencyIds(fullPath);
+	node.index = nextIndex++;
+	node.lowlink = node.index;
+	if(id >= 0) putNode(id, node);
+	else outside.put(fullPath, node);
+	stack.add(node);
+	return node;
+    }
+
+    /**
+     * Resolves the units of a library and everything it depends upon
+     *
+     * Iterative form of Tarjan's algorithm, a unit is completed once all
+     * units it depends upon are.
+     */
+    private void resolve(int id, String fullPath) throws FinderException {
+	ArrayList<Node> stack = new ArrayList<Node>();
+	ArrayList<Node> walk = new ArrayList<Node>();
+	try {
+	    walk.add(visit(id, fullPath, stack));
+	    while(!walk.isEmpty()) {
+		Node node = walk.get(walk.size() - 1);
+		if(node.next < node.deps.length) {
+		    int dep = node.deps[node.next++];
+		    if(!isAvailable(dep)) {
+			assumeSystemLibrary(dep);
+			continue;
+		    }
+		    Node child = getNode(dep);
+		    if(child == null) {
+			walk.add(visit(dep, path + Names.getName(dep), stack));
+		    } else if(child.onStack) {
+			node.lowlink = Math.min(node.lowlink, child.index);
+		    }
+		    continue;
+		}
+
+		walk.remove(walk.size() - 1);
+		if(!walk.isEmpty()) {
+		    Node parent = walk.get(walk.size() - 1);
+		    parent.lowlink = Math.min(parent.lowlink, node.lowlink);
+		}
+		if(node.lowlink == node.index) {
+		    int first = stack.lastIndexOf(node);
+		    List<Node> members = stack.subList(first, stack.size());
+		    complete(members.toArray(new Node[members.size()]));
+		    members.clear();
+		}
+	    }
+	} catch (FinderException ex) {
+	    // Forget the unfinished libraries, so they are resolved anew
+	    for(int i = 0; i < stack.size(); i++) {
+		Node node = stack.get(i);
+		if(node.id >= 0) nodes[node.id] = null;
+		else outside.remove(node.fullPath);
+	    }
+	    throw ex;
+	}
+    }
+
+    /**
+     * Creates the unit of a completed component and computes its closure
+     */
+    private void complete(Node[] members) {
+	Unit unit = new Unit();
+	for(int i = 0; i < members.length; i++) {
+	    members[i].onStack = false;
+	    members[i].unit = unit;
+	}
+	unit.cyclic = members.length > 1;
+	for(int i = 0; i < members[0].deps.length; i++) {
+	    if(members[0].id >= 0 && members[0].deps[i] == members[0].id) unit.cyclic = true;
+	}
+	if(unit.cyclic) Arrays.sort(members, BY_NAME);
+	unit.nodes = members;
+
+	int[] closure = new int[16];
+	int size = 0;
+	for(int m = 0; m < members.length; m++) {
+	    int[] deps = members[m].deps;
+	    for(int i = 0; i < deps.length; i++) {
+		int dep = deps[i];
+
+		// If the current dependency is already part of the closure, it
+		// can be skipped.
+		if(seen.get(dep)) continue;
+
+		Node child = getNode(dep);
+		if(child == null || child.unit == unit) continue;
+		int[] childClosure = child.unit.closure;
+		if(size + childClosure.length + 1 > closure.length) {
+		    int[] grown = new int[Math.max(closure.length * 2, size + childClosure.length + 1)];
+		    System.arraycopy(closure, 0, grown, 0, size);
+		    closure = grown;
+		}
+		for(int k = 0; k < childClosure.length; k++) {
+		    if(!seen.get(childClosure[k])) {
+			seen.set(childClosure[k]);
+			closure[size++] = childClosure[k];
+		    }
+		}
+		if(!seen.get(dep)) {
+		    seen.set(dep);
+		    closure[size++] = dep;
+		}
+	    }
+	}
+	if(unit.cyclic) {
+	    if(size + members.length > closure.length) {
+		int[] grown = new int[size + members.length];
+		System.arraycopy(closure, 0, grown, 0, size);
+		closure = grown;
+	    }
+	    for(int m = 0; m < members.length; m++) {
+		if(!seen.get(members[m].id)) closure[size++] = members[m].id;
+	    }
+	    cycles.add(unit.getMembers());
+	    System.out.printf("Load cyclic libraries as one unit: %s\n", join(unit.getMembers()));
+	}
+
+	unit.closure = new int[size];
+	System.arraycopy(closure, 0, unit.closure, 0, size);
+	for(int i = 0; i < size; i++) seen.clear(unit.closure[i]);
+    }
+
+    private static String join(String[] names) {
+	StringBuilder sb = new StringBuilder();
+	for(int i = 0; i < names.length; i++) {
+	    if(i > 0) sb.append(", ");
+	    sb.append(names[i]);
+	}
+	return sb.toString();
+    }
+
+    private Unit getUnit(String fullPath) throws FinderException {
+	int id = getId(fullPath);
+	Node node = id >= 0 ? getNode(id) : outside.get(fullPath);
+	if(node == null) {
+	    resolve(id, fullPath);
+	    node = id >= 0 ? getNode(id) : outside.get(fullPath);
+	}
+	return node.unit;
+    }
+
+    /**
+     * Gets the ordered closure of a library as name ids
+     *
+     * The returned array is shared with the memo and must not be modified.
+     *
+     * @param fullPath The full path to the library
+     *
+     * @return The name ids of all dependencies of the library, in load order
+     */
+    int[] getClosureIds(String fullPath) throws FinderException {
+	return getUnit(fullPath).closure;
+    }
+
+    /**
+     * Gets the ordered closure of a library
+     *
+     * The returned set is shared with the memo and must not be modified.
+     * A library which is part of a cycle is in its own closure, together
+     * with the other libraries of its unit.
+     *
+     * @param fullPath The full path to the library
+     *
+     * @return All dependencies of the library, in load order
+     */
+    LinkedHashSet<String> getClosure(String fullPath) throws FinderException {
+	Unit unit = getUnit(fullPath);
+	if(unit.closureSet == null) {
+	    LinkedHashSet<String> closure = new LinkedHashSet<String>();
+	    for(int i = 0; i < unit.closure.length; i++) {
+		closure.add(Names.getName(unit.closure[i]));
+	    }
+	    unit.closureSet = closure;
+	}
+	return unit.closureSet;
+    }
+
+    /**
+     * Groups ordered libraries into load units
+     *
+     * The libraries of a cyclic unit are expected to be adjacent, as they
+     * are in any closure. Libraries which are not in the path form a unit
+     * of their own.
+     *
+     * @param libraries The file names of the libraries, in load order
+     *
+     * @return The load units, in load order
+     */
+    String[][] getLoadUnits(String[] libraries) throws FinderException {
+	ArrayList<String[]> units = new ArrayList<String[]>();
+	HashSet<Unit> done = new HashSet<Unit>();
+	for(int i = 0; i < libraries.length; i++) {
+	    String fullPath = path + libraries[i];
+	    if(!isAvailable(fullPath)) {
+		units.add(new String[] { libraries[i] });
+		continue;
+	    }
+	    Unit unit = getUnit(fullPath);
+	    if(done.add(unit)) units.add(unit.getMembers());
+	}
+	return units.toArray(new String[units.size()][]);
+    }
+
+    /**
+     * Gets the cyclic load units found so far
+     *
+     * @return The libraries of every cycle, ordered by name
+     */
+    List<String[]> getCycles() { return cycles; }
+}
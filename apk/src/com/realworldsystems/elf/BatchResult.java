@@ -0,0 +1,105 @@
+/*
+ *  This file is part of the Realworld Systems ELF Reader Library (ELFRL).
+ *
+ *  ELFRL is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  ELFRL is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with ELFRL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.realworldsystems.elf;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The outcome of reading many ELF objects through Reader.readAll()
+ *
+ * Every ELF object is either parsed, with its ELF header, program header
+ * and dynamic tables available from its reader and the ids of its library
+ * dependencies collected, or failed with an error. All maps keep the
+ * order in which the ELF objects were given and can't be modified.
+ *
+ * @author Sjoerd van Leent
+ */
+public class BatchResult {
+
+    /**
+     * Option of Reader.readAll() to count the relocations as well
+     */
+    public static final int RELOCATIONS = 1;
+
+    /**
+     * Option of Reader.readAll() to keep the readers
+     */
+    public static final int READERS = 2;
+
+    private Map<File, Reader> readers;
+    private Map<File, int[]> dependencyIds;
+    private Map<File, Integer> sonameIds;
+    private Map<File, Relocations> relocations;
+    private Map<File, ReaderException> errors;
+
+    BatchResult(Map<File, Reader> readers, Map<File, int[]> dependencyIds,
+		Map<File, Integer> sonameIds, Map<File, Relocations> relocations,
+		Map<File, ReaderException> errors) {
+	this.readers = Collections.unmodifiableMap(readers);
+	this.dependencyIds = Collections.unmodifiableMap(dependencyIds);
+	this.sonameIds = Collections.unmodifiableMap(sonameIds);
+	this.relocations = Collections.unmodifiableMap(relocations);
+	this.errors = Collections.unmodifiableMap(errors);
+    }
+
+    /**
+     * Gets the readers of the parsed ELF objects, if asked for through
+     * READERS
+     *
+     * @return The readers, by ELF object
+     */
+    public Map<File, Reader> getReaders() { return readers; }
+
+    /**
+     * Gets the ids in Names of the library dependencies of the parsed ELF
+     * objects, collected by the workers
+     *
+     * @return The ids, by ELF object
+     */
+    public Map<File, int[]> getLibraryDependencyIds() { return dependencyIds; }
+
+    /**
+     * Gets the ids in Names of the SONAME of the parsed ELF objects which
+     * have one
+     *
+     * @return The ids, by ELF object
+     */
+    public Map<File, Integer> getSonameIds() { return sonameIds; }
+
+    /**
+     * Gets the relocation summaries of the parsed ELF objects, if asked for
+     * through RELOCATIONS
+     *
+     * @return The summaries, by ELF object
+     */
+    public Map<File, Relocations> getRelocations() { return relocations; }
+
+    /**
+     * Gets the errors of the ELF objects which failed to parse
+     *
+     * @return The errors, by ELF object
+     */
+    public Map<File, ReaderException> getErrors() { return errors; }
+
+    /**
+     * Tells whether all ELF objects were parsed
+     */
+    public boolean isComplete() { return errors.isEmpty(); }
+}
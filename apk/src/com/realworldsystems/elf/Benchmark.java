@@ -0,0 +1,169 @@
+/*
+ *  This file is part of the Realworld Systems ELF Reader Library (ELFRL).
+ *
+ *  ELFRL is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  ELFRL is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with ELFRL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.realworldsystems.elf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Command line benchmark for the Reader
+ *
+ * Compares the mapped Reader against the former stream based approach,
+ * which opened a new FileInputStream for the ELF header, for every program
+ * header entry, for the dynamic table and for every NEEDED, SONAME and
+ * RPATH string. Both approaches read the same NEEDED entries of the same
+ * libraries. The files opened and the elapsed time of both are reported,
+ * the opens of the Reader are counted where it maps an ELF object.
+ *
+ * @author Sjoerd van Leent
+ */
+public class Benchmark {
+
+    /**
+     * Counts the file opens done by the stream based approach
+     */
+    private static int streamOpens = 0;
+
+    private static FileInputStream open(File f, long offset) throws IOException {
+	FileInputStream fis = new FileInputStream(f);
+	streamOpens++;
+	fis.skip(offset);
+	return fis;
+    }
+
+    private static int readInteger(FileInputStream fis) throws IOException {
+	byte[] raw = new byte[4];
+	fis.read(raw, 0, raw.length);
+	return ((0x000000FF & raw[3]) << 24) | ((0x000000FF & raw[2]) << 16) |
+	    ((0x000000FF & raw[1]) << 8) | (0x000000FF & raw[0]);
+    }
+
+    private static int readShort(FileInputStream fis) throws IOException {
+	byte[] raw = new byte[2];
+	fis.read(raw, 0, raw.length);
+	return ((0x000000FF & raw[1]) << 8) | (0x000000FF & raw[0]);
+    }
+
+    /**
+     * Gets the NEEDED entries the way the Reader used to do it
+     */
+    private static int streamDependencies(File f) throws IOException {
+	FileInputStream fis = open(f, 28);
+	int phoff = readInteger(fis);
+	fis.skip(10);
+	int phentsize = readShort(fis);
+	int phnum = readShort(fis);
+	fis.close();
+
+	int needed = 0;
+	for(int k = 0; k < phnum; k++) {
+	    fis = open(f, phoff + (k * phentsize));
+	    int type = readInteger(fis);
+	    int offset = readInteger(fis);
+	    fis.skip(8);
+	    int filesz = readInteger(fis);
+	    fis.close();
+	    if(type != ProgramHeader.Entry.Type.DYNAMIC) continue;
+
+	    int[] tags = new int[filesz / 8];
+	    int[] values = new int[filesz / 8];
+	    int strtab = 0;
+	    fis = open(f, offset);
+	    for(int i = 0; i < tags.length; i++) {
+		tags[i] = readInteger(fis);
+		values[i] = readInteger(fis);
+		if(tags[i] == Dynamic.DT.Tag.STRTAB) strtab = values[i];
+	    }
+	    fis.close();
+
+	    for(int i = 0; i < tags.length; i++) {
+		if(tags[i] == Dynamic.DT.Tag.NEEDED ||
+		   tags[i] == Dynamic.DT.Tag.RPATH ||
+		   tags[i] == Dynamic.DT.Tag.SONAME) {
+		    fis = open(f, strtab);
+		    fis.skip(values[i]);
+		    ArrayList<Byte> byteList = new ArrayList<Byte>();
+		    int b;
+		    while((b = fis.read()) > 0) byteList.add((byte)b);
+		    fis.close();
+		    if(tags[i] == Dynamic.DT.Tag.NEEDED) needed++;
+		}
+	    }
+	}
+	return needed;
+    }
+
+    private static void collect(File f, ArrayList<File> files) {
+	if(f.isDirectory()) {
+	    String[] names = f.list();
+	    for(int i = 0; i < names.length; i++) {
+		collect(new File(f, names[i]), files);
+	    }
+	} else if(f.getName().endsWith(".so")) {
+	    files.add(f);
+	}
+    }
+
+    public static void main(String[] args) throws Exception {
+	if(args.length < 1) {
+	    System.err.println("Usage: Benchmark <library or directory>... [-rounds N]");
+	    return;
+	}
+
+	int rounds = 5;
+	ArrayList<File> files = new ArrayList<File>();
+	for(int i = 0; i < args.length; i++) {
+	    if(args[i].equals("-rounds") && i + 1 < args.length) {
+		rounds = Integer.parseInt(args[++i]);
+	    } else {
+		collect(new File(args[i]), files);
+	    }
+	}
+
+	long streamTime = 0;
+	long mappedTime = 0;
+	int mappedOpens = 0;
+	for(int r = 0; r < rounds; r++) {
+	    streamOpens = 0;
+	    long start = System.nanoTime();
+	    for(int i = 0; i < files.size(); i++) {
+		streamDependencies(files.get(i));
+	    }
+	    streamTime += System.nanoTime() - start;
+
+	    int opens = Reader.fileOpens.get();
+	    start = System.nanoTime();
+	    for(int i = 0; i < files.size(); i++) {
+		Reader reader = new Reader(files.get(i));
+		reader.getELFHeader();
+		reader.getProgramHeader();
+		reader.getLibraryDependencies();
+	    }
+	    mappedTime += System.nanoTime() - start;
+	    mappedOpens = Reader.fileOpens.get() - opens;
+	}
+
+	System.out.printf("Libraries: %d, rounds: %d\n", files.size(), rounds);
+	System.out.printf("-- Stream: %d opens per round, %.2f ms per round\n",
+			  streamOpens, streamTime / 1e6 / rounds);
+	System.out.printf("-- Mapped: %d opens per round, %.2f ms per round\n",
+			  mappedOpens, mappedTime / 1e6 / rounds);
+    }
+}
@@ -0,0 +1,357 @@
+/*
+ *  This file is part of the Realworld Systems ELF Reader Library (ELFRL).
+ *
+ *  ELFRL is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  ELFRL is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with ELFRL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.realworldsystems.elf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A persistent cache of parsed ELF metadata
+ *
+ * Stores, per ELF object, the ELF header, the program header entries and
+ * the dynamic tables including the NEEDED, SONAME and RPATH names, and the
+ * relocation summary once it is asked for. Entries
+ * are keyed by the absolute path of the ELF object and are only valid as
+ * long as its size and modification time are unchanged. A Reader
+ * constructed with a cache uses a valid entry instead of parsing the ELF
+ * object, and stores what it parsed otherwise.
+ *
+ * The cache is thread safe, so it can be shared by concurrent readers.
+ *
+ * @author Sjoerd van Leent
+ */
+public class Cache {
+
+    /**
+     * Identifies a cache file ("ELFC")
+     */
+    private static final int MAGIC = 0x454c4643;
+
+    /**
+     * The version of the cache file format
+     */
+    private static final int VERSION = 5;
+
+    /**
+     * A cached ELF object
+     */
+    static class Entry {
+	long size;
+	long modified;
+	ELFHeader elfHeader;
+	ProgramHeader programHeader;
+	/** null until the relocations are counted */
+	Relocations relocations;
+    }
+
+    /**
+     * The file the cache is persisted in
+     */
+    private File file;
+
+    /**
+     * The cached entries, by absolute path
+     */
+    private HashMap<String, Entry> entries = new HashMap<String, Entry>();
+
+    /**
+     * Set if entries are added or removed since loading
+     */
+    private boolean modified = false;
+
+    /**
+     * Constructs a cache persisted in the given file, reading it if present
+     *
+     * A missing, unreadable or outdated cache file results in an empty
+     * cache, it is rewritten by save().
+     *
+     * @param file The cache file
+     */
+    public Cache(File file) {
+	this.file = file;
+	if(file.exists()) {
+	    try {
+		load();
+	    } catch (Exception ex) {
+		entries.clear();
+		modified = true;
+	    }
+	}
+    }
+
+    /**
+     * Gets the number of cached ELF objects
+     */
+    public synchronized int size() { return entries.size(); }
+
+    /**
+     * Gets a valid entry for the given ELF object
+     *
+     * @return The entry, or null if absent or outdated
+     */
+    synchronized Entry get(File elfObject) {
+	Entry entry = entries.get(elfObject.getAbsolutePath());
+	if(entry == null) return null;
+	if(entry.size != elfObject.length() ||
+	   entry.modified != elfObject.lastModified()) {
+	    return null;
+	}
+	return entry;
+    }
+
+    /**
+     * Stores the parsed headers of the given ELF object
+     */
+    synchronized void put(File elfObject, ELFHeader elfHeader,
+			  ProgramHeader programHeader) {
+	Entry entry = new Entry();
+	entry.size = elfObject.length();
+	entry.modified = elfObject.lastModified();
+	entry.elfHeader = elfHeader;
+	entry.programHeader = programHeader;
+	entries.put(elfObject.getAbsolutePath(), entry);
+	modified = true;
+    }
+
+    /**
+     * Gets the relocation summary of the given ELF object
+     *
+     * @return The summary, or null if absent or outdated
+     */
+    synchronized Relocations getRelocations(File elfObject) {
+	Entry entry = get(elfObject);
+	return entry == null ? null : entry.relocations;
+    }
+
+    /**
+     * Stores the relocation summary of the given ELF object, which needs a
+     * valid entry
+     */
+    synchronized void putRelocations(File elfObject, Relocations relocations) {
+	Entry entry = get(elfObject);
+	if(entry == null) return;
+	entry.relocations = relocations;
+	modified = true;
+    }
+
+    /**
+     * Writes the cache file if anything changed
+     *
+     * Entries of ELF objects which no longer exist are dropped. The cache
+     * is written to a temporary file first, which then replaces the cache
+     * file.
+     *
+     * @throws ReaderException if the cache file can not be written
+     */
+    public synchronized void save() throws ReaderException {
+	Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+	while(it.hasNext()) {
+	    if(!new File(it.next().getKey()).exists()) {
+		it.remove();
+		modified = true;
+	    }
+	}
+	if(!modified) return;
+
+	File tmp = new File(file.getPath() + ".tmp");
+	DataOutputStream dos = null;
+	try {
+	    dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+	    dos.writeInt(MAGIC);
+	    dos.writeInt(VERSION);
+	    dos.writeInt(entries.size());
+	    for(Map.Entry<String, Entry> e : entries.entrySet()) {
+		dos.writeUTF(e.getKey());
+		write(dos, e.getValue());
+	    }
+	    dos.close();
+	    dos = null;
+	    if(!tmp.renameTo(file)) {
+		throw new IOException("Could not replace " + file.getPath());
+	    }
+	    modified = false;
+	} catch (IOException ex) {
+	    throw new ReaderException("Could not write ELF cache", ex);
+	} finally {
+	    if (dos != null) {
+		try {
+		    dos.close();
+		} catch (IOException ex) {
+		    throw new Error(ex.getMessage());
+		}
+	    }
+	}
+    }
+
+    private void load() throws IOException {
+	DataInputStream dis =
+	    new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+	try {
+	    if(dis.readInt() != MAGIC || dis.readInt() != VERSION) {
+		throw new IOException("Not a valid ELF cache");
+	    }
+	    int count = dis.readInt();
+	    for(int i = 0; i < count; i++) {
+		String path = dis.readUTF();
+		entries.put(path, read(dis));
+	    }
+	} finally {
+	    dis.close();
+	}
+    }
+
+    private static void write(DataOutputStream dos, Entry entry) throws IOException {
+	dos.writeLong(entry.size);
+	dos.writeLong(entry.modified);
+
+	ELFHeader h = entry.elfHeader;
+	dos.write(h.identifier, 0, 16);
+	dos.writeInt(h.type);
+	dos.writeInt(h.machine);
+	dos.writeInt(h.version);
+	dos.writeInt(h.entry);
+	dos.writeInt(h.phoff);
+	dos.writeInt(h.shoff);
+	dos.writeInt(h.flags);
+	dos.writeInt(h.ehsize);
+	dos.writeInt(h.phentsize);
+	dos.writeInt(h.phnum);
+	dos.writeInt(h.shentsize);
+	dos.writeInt(h.shnum);
+	dos.writeInt(h.shstrndx);
+
+	ProgramHeader.Entry[] phs = entry.programHeader.getEntries();
+	dos.writeInt(phs.length);
+	for(int i = 0; i < phs.length; i++) {
+	    ProgramHeader.Entry ph = phs[i];
+	    dos.writeInt(ph.type);
+	    dos.writeInt(ph.offset);
+	    dos.writeInt(ph.vaddr);
+	    dos.writeInt(ph.paddr);
+	    dos.writeInt(ph.filesz);
+	    dos.writeInt(ph.memsz);
+	    dos.writeInt(ph.flags);
+	    dos.writeInt(ph.align);
+
+	    Dynamic dynamic = ph.getDynamic();
+	    if(dynamic == null) {
+		dos.writeInt(-1);
+		continue;
+	    }
+	    Dynamic.DT[] dts = dynamic.getDTList();
+	    dos.writeInt(dts.length);
+	    for(int j = 0; j < dts.length; j++) {
+		dos.writeInt(dts[j].tag);
+		dos.writeInt(dts[j].val);
+		dos.writeInt(dts[j].ptr);
+		dos.writeBoolean(dts[j].nameId >= 0);
+		if(dts[j].nameId >= 0) dos.writeUTF(dts[j].getName());
+	    }
+	}
+
+	Relocations r = entry.relocations;
+	dos.writeBoolean(r != null);
+	if(r == null) return;
+	int[] types = r.getTypes();
+	dos.writeInt(types.length);
+	for(int i = 0; i < types.length; i++) {
+	    dos.writeInt(types[i]);
+	    dos.writeInt(r.getCount(types[i]));
+	}
+	dos.writeInt(r.rela);
+	dos.writeBoolean(r.textRelocations);
+	dos.writeInt(r.machine);
+    }
+
+    private static Entry read(DataInputStream dis) throws IOException {
+	Entry entry = new Entry();
+	entry.size = dis.readLong();
+	entry.modified = dis.readLong();
+
+	ELFHeader h = new ELFHeader();
+	h.identifier = new byte[16];
+	dis.readFully(h.identifier);
+	h.type = dis.readInt();
+	h.machine = dis.readInt();
+	h.version = dis.readInt();
+	h.entry = dis.readInt();
+	h.phoff = dis.readInt();
+	h.shoff = dis.readInt();
+	h.flags = dis.readInt();
+	h.ehsize = dis.readInt();
+	h.phentsize = dis.readInt();
+	h.phnum = dis.readInt();
+	h.shentsize = dis.readInt();
+	h.shnum = dis.readInt();
+	h.shstrndx = dis.readInt();
+	entry.elfHeader = h;
+
+	ProgramHeader.Entry[] phs = new ProgramHeader.Entry[dis.readInt()];
+	for(int i = 0; i < phs.length; i++) {
+	    ProgramHeader.Entry ph = new ProgramHeader.Entry();
+	    ph.type = dis.readInt();
+	    ph.offset = dis.readInt();
+	    ph.vaddr = dis.readInt();
+	    ph.paddr = dis.readInt();
+	    ph.filesz = dis.readInt();
+	    ph.memsz = dis.readInt();
+	    ph.flags = dis.readInt();
+	    ph.align = dis.readInt();
+
+	    int count = dis.readInt();
+	    if(count >= 0) {
+		Dynamic d = new Dynamic();
+		d.dtList = new Dynamic.DT[count];
+		for(int j = 0; j < count; j++) {
+		    Dynamic.DT dt = new Dynamic.DT();
+		    dt.tag = dis.readInt();
+		    dt.val = dis.readInt();
+		    dt.ptr = dis.readInt();
+		    if(dis.readBoolean()) dt.nameId = Names.intern(dis.readUTF());
+		    d.dtList[j] = dt;
+		}
+		ph.dynamic = d;
+	    }
+	    phs[i] = ph;
+	}
+	entry.programHeader = new ProgramHeader(phs);
+
+	if(dis.readBoolean()) {
+	    Relocations r = new Relocations();
+	    int types = dis.readInt();
+	    for(int i = 0; i < types; i++) {
+		int type = dis.readInt();
+		r.add(type, dis.readInt());
+	    }
+	    r.rela = dis.readInt();
+	    r.textRelocations = dis.readBoolean();
+	    r.machine = dis.readInt();
+	    entry.relocations = r;
+	}
+	return entry;
+    }
+}
@@ -17,6 +17,9 @@
 
 package com.realworldsystems.elf;
 
+import java.io.File;
+import java.util.ArrayList;
+
 public class Dump {
     
     public static void dumpHeader(ELFHeader h) {
@@ -70,6 +73,18 @@ public class Dump {
 	}
     }
 
+    public static void dumpSectionHeader(SectionHeader h) {
+	SectionHeader.Entry[] entries = h.getEntries();
+	for(int i = 0; i < entries.length; i++) {
+	    SectionHeader.Entry e = entries[i];
+	    System.out.printf("Section Header Entry %d: %s\n", i, e.getName());
+	    System.out.printf("-- Entry Type: %s\n", e.getTypeName());
+	    System.out.printf("-- Offset: 0x%x\n", e.getOffset());
+	    System.out.printf("-- Virtual Address: 0x%x\n", e.getAddr());
+	    System.out.printf("-- Size: %d Bytes\n", e.getSize());
+	}
+    }
+
     public static void dumpDependencies(String[] list) {
 	    System.out.println("All library dependencies:");
 	for(int i = 0; i < list.length; i++) {
@@ -79,11 +94,20 @@ public class Dump {
 
     public static void main(String[] args) throws ReaderException {
 	
+	ArrayList<File> files = new ArrayList<File>();
 	for(int i = 0; i < args.length; i++) {
-	    Reader r = new Reader(args[i]);
+	    files.add(new File(args[i]));
+	}
+	BatchResult result = Reader.readAll(files);
+
+	for(int i = 0; i < files.size(); i++) {
+	    ReaderException error = result.getErrors().get(files.get(i));
+	    if(error != null) throw error;
+	    Reader r = result.getReaders().get(files.get(i));
 	    
 	    dumpHeader(r.getELFHeader());
 	    dumpProgramHeader(r.getProgramHeader());
+	    dumpSectionHeader(r.getSectionHeader());
 	    dumpDependencies(r.getLibraryDependencies());
 	}
 	
@@ -23,6 +23,10 @@ package com.realworldsystems.elf;
  * An instance of this object represents a list of tags which contain
  * pointers to certain entries or values to indices.
  *
+ * Like the program header, a dynamic table parsed by a Reader decodes an
+ * entry on the first request. Its names are interned while the Reader
+ * checks the table, so decoding can't fail.
+ *
  * @author Sjoerd van Leent
  */
 public class Dynamic {
@@ -55,9 +59,10 @@ public class Dynamic {
 	int ptr = 0;
 	
 	/**
-	 * The name is set only if the value points into the string table
+	 * The id of the name in Names, set only if the value points into
+	 * the string table, -1 otherwise
 	 */
-	String name = null;
+	int nameId = -1;
 		
 	/**
 	 * Gets the tag, which can be one of the tags listed in Tag.
@@ -91,7 +96,13 @@ public class Dynamic {
 	 * Gets the name of the value pointed to by the current tag. Only
 	 * available if this is of kind NEEDED, SONAME or RPATH.
 	 */
-	public String getName() { return name; }
+	public String getName() { return nameId < 0 ? null : Names.getName(nameId); }
+
+	/**
+	 * Gets the id of the name in Names. Only available if this is of
+	 * kind NEEDED, SONAME or RPATH, -1 otherwise.
+	 */
+	public int getNameId() { return nameId; }
 		
 	/**
 	 * Contains known tag values.
@@ -247,6 +258,20 @@ public class Dynamic {
 	     * A jmprel tag. Has a pointer.
 	     */
 	    public static final int	JMPREL	 = 23;
+
+	    /**
+	     * A flags tag. Has a value.
+	     *
+	     * Contains the DF_* flags of the ELF object
+	     */
+	    public static final int	FLAGS	 = 30;
+
+	    /**
+	     * A GNU hash tag. Has a pointer.
+	     *
+	     * Contains a pointer to the GNU style symbol hash table
+	     */
+	    public static final int	GNU_HASH = 0x6ffffef5;
 	}
 	
 
@@ -281,6 +306,8 @@ public class Dynamic {
 	    case Tag.DEBUG  : return "DEBUG";
 	    case Tag.TEXTREL  : return "TEXTEL";
 	    case Tag.JMPREL  : return "JMPREL";
+	    case Tag.FLAGS  : return "FLAGS";
+	    case Tag.GNU_HASH  : return "GNU_HASH";
 	    default: return String.format("(Unknown [0x%x])", tag);
 	    }		    
 	}
@@ -288,12 +315,56 @@ public class Dynamic {
     
     DT[] dtList;
 
+    /**
+     * The reader to decode entries with, null once all are decoded
+     */
+    private Reader reader = null;
+
+    /**
+     * The file offset of the table
+     */
+    private int offset;
+
+    /**
+     * The ids of the names of the entries in Names, -1 for entries
+     * without a name
+     */
+    private int[] nameIds;
+
+    /**
+     * Constructs a dynamic table decoding its entries on request
+     *
+     * @param reader The reader to decode the entries with
+     * @param offset The file offset of the table
+     * @param nameIds The ids of the names of the entries, interned while
+     *                the table was checked, -1 for entries without a name
+     */
+    Dynamic(Reader reader, int offset, int[] nameIds) {
+	this.dtList = new DT[nameIds.length];
+	this.reader = reader;
+	this.offset = offset;
+	this.nameIds = nameIds;
+    }
+
+    /**
+     * Decodes all entries
+     */
+    synchronized void load() {
+	if(reader == null) return;
+	for(int i = 0; i < dtList.length; i++) getDT(i);
+	reader = null;
+	nameIds = null;
+    }
+
     /**
      * Gets the array of DT entries
      *
      * @return The array with DT entries set up.
      */
-    public DT[] getDTList() { return dtList; }
+    public synchronized DT[] getDTList() {
+	load();
+	return dtList;
+    }
     
     /**
      * Gets the size of the DT list
@@ -308,5 +379,10 @@ public class Dynamic {
      *
      * @return A dynamic table tag
      */
-    public DT getDT(int ndx) { return dtList[ndx]; }
+    public synchronized DT getDT(int ndx) {
+	if(dtList[ndx] == null) {
+	    dtList[ndx] = reader.readDT(offset, ndx, nameIds[ndx]);
+	}
+	return dtList[ndx];
+    }
 }
@@ -105,6 +105,11 @@ public class ELFHeader {
 	 * An ARM machine
 	 */
 	public static final int ARM = 40;
+
+	/**
+	 * An ARM 64-bit (AArch64) machine
+	 */
+	public static final int AARCH64 = 183;
     }
 
     /**
@@ -221,6 +226,7 @@ public class ELFHeader {
 	case Machine.MIPS_RS3000: return "MIPS RS3000";
 	case Machine.ARM: return "ARM";
 	case Machine.X86_64: return "AMD x86_64";
+	case Machine.AARCH64: return "AArch64";
 	default: return String.format("(Unknown [0x%x])\n", machine);
 	}
     }
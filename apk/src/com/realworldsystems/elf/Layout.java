@@ -0,0 +1,177 @@
+/*
+ *  This file is part of the Realworld Systems ELF Reader Library (ELFRL).
+ *
+ *  ELFRL is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  ELFRL is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with ELFRL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.realworldsystems.elf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The sizes and field offsets of the structures of an ELF class
+ *
+ * ELFCLASS32 and ELFCLASS64 objects share their structures, but addresses,
+ * offsets and sizes are words of 4 and 8 bytes respectively, and some
+ * fields are ordered differently. The byte order is the one of the buffer
+ * read from, see Reader.
+ *
+ * @author Sjoerd van Leent
+ */
+final class Layout {
+
+    static final Layout ELF32 = new Layout(false);
+    static final Layout ELF64 = new Layout(true);
+
+    /**
+     * Gets the layout of an ELF class, see ELFHeader.ELFClass
+     *
+     * Anything but ELFCLASS64 is read as ELFCLASS32.
+     */
+    static Layout of(byte elfClass) {
+	return elfClass == ELFHeader.ELFClass.ELFCLASS64 ? ELF64 : ELF32;
+    }
+
+    /**
+     * Set for ELFCLASS64
+     */
+    final boolean wide;
+
+    /**
+     * The size of an address, offset or size
+     */
+    final int wordSize;
+
+    // Structure sizes
+    final int ehdrSize;
+    final int phentSize;
+    final int shentSize;
+    final int dynentSize;
+    final int symentSize;
+    final int relentSize;
+    final int relaentSize;
+
+    // ELF header, e_phentsize and onwards follow e_ehsize as 2 byte fields
+    final int eEntry;
+    final int ePhOff;
+    final int eShOff;
+    final int eFlags;
+    final int eEhSize;
+
+    // Program header entry, p_type is at 0
+    final int pOffset;
+    final int pVAddr;
+    final int pPAddr;
+    final int pFileSZ;
+    final int pMemSZ;
+    final int pFlags;
+    final int pAlign;
+
+    // Section header entry, sh_name is at 0 and sh_type at 4
+    final int sFlags;
+    final int sAddr;
+    final int sOffset;
+    final int sSize;
+    final int sLink;
+    final int sInfo;
+    final int sAddrAlign;
+    final int sEntSize;
+
+    // Symbol table entry, st_name is at 0
+    final int stValue;
+    final int stSize;
+    final int stInfo;
+    final int stOther;
+    final int stShNdx;
+
+    private Layout(boolean wide) {
+	this.wide = wide;
+	int w = wide ? 8 : 4;
+	wordSize = w;
+
+	ehdrSize = wide ? 64 : 52;
+	phentSize = wide ? 56 : 32;
+	shentSize = wide ? 64 : 40;
+	dynentSize = 2 * w;
+	symentSize = wide ? 24 : 16;
+	relentSize = 2 * w;
+	relaentSize = 3 * w;
+
+	eEntry = 24;
+	ePhOff = 24 + w;
+	eShOff = 24 + 2 * w;
+	eFlags = 24 + 3 * w;
+	eEhSize = eFlags + 4;
+
+	if(wide) {
+	    pFlags = 4;
+	    pOffset = 8;
+	} else {
+	    pOffset = 4;
+	    pFlags = 24;
+	}
+	pVAddr = pOffset + w;
+	pPAddr = pOffset + 2 * w;
+	pFileSZ = pOffset + 3 * w;
+	pMemSZ = pOffset + 4 * w;
+	pAlign = wide ? 48 : 28;
+
+	sFlags = 8;
+	sAddr = 8 + w;
+	sOffset = 8 + 2 * w;
+	sSize = 8 + 3 * w;
+	sLink = 8 + 4 * w;
+	sInfo = sLink + 4;
+	sAddrAlign = sInfo + 4;
+	sEntSize = sAddrAlign + w;
+
+	if(wide) {
+	    stInfo = 4;
+	    stOther = 5;
+	    stShNdx = 6;
+	    stValue = 8;
+	    stSize = 16;
+	} else {
+	    stValue = 4;
+	    stSize = 8;
+	    stInfo = 12;
+	    stOther = 13;
+	    stShNdx = 14;
+	}
+    }
+
+    /**
+     * Reads an address, offset or size, unsigned
+     */
+    long readWord(ByteBuffer image, int offset) {
+	return wide ? image.getLong(offset) : image.getInt(offset) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Reads an address, offset or size into the 32 bits the headers keep
+     *
+     * Higher bits are dropped, which leaves offsets and sizes within the
+     * ELF object and the addresses of shared objects intact.
+     */
+    int readInt(ByteBuffer image, int offset) {
+	return (int)readWord(image, offset);
+    }
+
+    /**
+     * Reads the relocation type from the r_info field of a relocation
+     */
+    int readRelocationType(ByteBuffer image, int offset) {
+	return wide ? (int)image.getLong(offset) : image.getInt(offset) & 0xff;
+    }
+}
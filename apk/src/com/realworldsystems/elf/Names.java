@@ -0,0 +1,164 @@
+/*
+ *  This file is part of the Realworld Systems ELF Reader Library (ELFRL).
+ *
+ *  ELFRL is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  ELFRL is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with ELFRL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.realworldsystems.elf;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A global dictionary of the library names found in dynamic tables
+ *
+ * Every distinct name (libc.so, libQtCore.so, ...) gets a small int id,
+ * ids are assigned from 0 upwards. Names are interned straight from the
+ * string table in the mapped ELF object: a name seen before costs a copy,
+ * a hash and a lookup, only a new name is decoded into a String.
+ *
+ * The dictionary is thread safe. Looking up a known name or the name of
+ * an id takes no lock, so parse workers running in parallel don't wait
+ * for each other. Only adding a new name is serialized.
+ *
+ * @author Sjoerd van Leent
+ */
+public final class Names {
+
+    private Names() {}
+
+    /**
+     * The bytes of a name, as key of the dictionary
+     */
+    private static final class Key {
+	final byte[] bytes;
+	final int hash;
+
+	Key(byte[] bytes) {
+	    this.bytes = bytes;
+	    this.hash = Arrays.hashCode(bytes);
+	}
+
+	public int hashCode() { return hash; }
+
+	public boolean equals(Object o) {
+	    return o instanceof Key && Arrays.equals(bytes, ((Key) o).bytes);
+	}
+    }
+
+    /**
+     * The id of every name
+     */
+    private static final ConcurrentHashMap<Key, Integer> ids =
+	new ConcurrentHashMap<Key, Integer>();
+
+    /**
+     * The name of every id, replaced by a larger copy when full
+     */
+    private static volatile String[] names = new String[128];
+
+    /**
+     * The number of names, written after the name itself
+     */
+    private static volatile int count = 0;
+
+    /**
+     * Serializes the adding of new names
+     */
+    private static final Object lock = new Object();
+
+    private static String decode(byte[] bytes) {
+	try {
+	    return new String(bytes, "US-ASCII");
+	} catch (UnsupportedEncodingException ex) {
+	    throw new Error(ex.getMessage());
+	}
+    }
+
+    private static int intern(Key key) {
+	Integer id = ids.get(key);
+	if(id != null) return id.intValue();
+
+	synchronized(lock) {
+	    id = ids.get(key);
+	    if(id != null) return id.intValue();
+
+	    int next = count;
+	    String[] table = names;
+	    if(next == table.length) {
+		String[] grown = new String[next * 2];
+		System.arraycopy(table, 0, grown, 0, next);
+		table = grown;
+	    }
+	    table[next] = decode(key.bytes);
+	    names = table;
+	    count = next + 1;
+	    ids.put(key, Integer.valueOf(next));
+	    return next;
+	}
+    }
+
+    /**
+     * Interns a name from a buffer
+     *
+     * @param image The buffer containing the name
+     * @param offset The offset of the first byte of the name
+     * @param length The length of the name in bytes
+     *
+     * @return The id of the name
+     */
+    public static int intern(ByteBuffer image, int offset, int length) {
+	byte[] name = new byte[length];
+	for(int i = 0; i < length; i++) name[i] = image.get(offset + i);
+	return intern(new Key(name));
+    }
+
+    /**
+     * Interns a name
+     *
+     * @param name The name
+     *
+     * @return The id of the name
+     */
+    public static int intern(String name) {
+	byte[] array;
+	try {
+	    array = name.getBytes("US-ASCII");
+	} catch (UnsupportedEncodingException ex) {
+	    throw new Error(ex.getMessage());
+	}
+	return intern(new Key(array));
+    }
+
+    /**
+     * Gets the name of an id
+     *
+     * @param id The id of the name
+     *
+     * @return The name
+     */
+    public static String getName(int id) {
+	if(id < 0 || id >= count) {
+	    throw new IllegalArgumentException("Unknown name id " + id);
+	}
+	return names[id];
+    }
+
+    /**
+     * Gets the number of interned names
+     */
+    public static int size() { return count; }
+}
@@ -20,6 +20,12 @@ package com.realworldsystems.elf;
 /**
  * An instance of this object in a Reader instance represents the program header
  *
+ * A program header parsed by a Reader is a view over the mapped ELF
+ * object: an entry is decoded on its first request, and so are the entries
+ * of the dynamic table of a DYNAMIC entry. Everything is checked when the
+ * program header is parsed, so decoding can't fail. A program header taken from the Cache holds
+ * all its entries from the start.
+ *
  * @author Sjoerd van Leent
  */
 public class ProgramHeader {
@@ -215,16 +221,67 @@ public class ProgramHeader {
 
     private ProgramHeader.Entry[] entries;
 
+    /**
+     * The reader to decode entries with, null once all are decoded
+     */
+    private Reader reader = null;
+
+    /**
+     * The dynamic tables of the entries not decoded yet, null for entries
+     * without one
+     */
+    private Dynamic[] dynamics = null;
+
+    /**
+     * Constructs a program header holding all its entries
+     */
     ProgramHeader(ProgramHeader.Entry[] entries) {
 	this.entries = entries;
     }
 
+    /**
+     * Constructs a program header decoding its entries on request
+     *
+     * @param reader The reader to decode the entries with
+     * @param dynamics The dynamic table of every entry, null for entries
+     *                 without one
+     */
+    ProgramHeader(Reader reader, Dynamic[] dynamics) {
+	this.entries = new ProgramHeader.Entry[dynamics.length];
+	this.reader = reader;
+	this.dynamics = dynamics;
+    }
+
+    /**
+     * Decodes all entries and their dynamic tables
+     *
+     * The program header no longer refers to the reader afterwards, and
+     * with that to the mapped ELF object.
+     */
+    synchronized void load() {
+	if(reader == null) return;
+	for(int i = 0; i < entries.length; i++) {
+	    Dynamic dynamic = getEntry(i).getDynamic();
+	    if(dynamic != null) dynamic.load();
+	}
+	reader = null;
+	dynamics = null;
+    }
+
+    /**
+     * Tells whether all entries are decoded
+     */
+    synchronized boolean isLoaded() { return reader == null; }
+
     /**
      * Gets all available entries
      *
      * @return Available entries
      */
-    public ProgramHeader.Entry[] getEntries() { return entries; }
+    public synchronized ProgramHeader.Entry[] getEntries() {
+	load();
+	return entries;
+    }
     
     /**
      * Gets the size of available program header entries
@@ -239,5 +296,11 @@ public class ProgramHeader {
      * @param int Index into the program header entry table
      * @return The program header
      */
-    public ProgramHeader.Entry getEntry(int ndx) { return entries[ndx]; }
-}
\ No newline at end of file
+    public synchronized ProgramHeader.Entry getEntry(int ndx) {
+	if(entries[ndx] == null) {
+	    entries[ndx] = reader.readProgramHeaderEntry(ndx);
+	    entries[ndx].dynamic = dynamics[ndx];
+	}
+	return entries[ndx];
+    }
+}
@@ -18,10 +18,21 @@
 package com.realworldsystems.elf;
 
 import java.io.File;
-import java.io.InputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /** Reader class to be able to read headers from an ELF object
  *
@@ -56,6 +67,59 @@ public class Reader {
     private ProgramHeader programHeader = null;
 
 
+    /**
+     * The Section Header object
+     *
+     * Initially, this element is not set. If the section header is parsed through
+     * getSectionHeader(), it will be set. Further calls to getSectionHeader() will
+     * return this value.
+     */
+    private SectionHeader sectionHeader = null;
+
+
+    /**
+     * The index of the loadable segments, built from the program header on
+     * first use
+     */
+    private SegmentIndex segmentIndex = null;
+
+
+    /**
+     * The dynamic symbol table, decoded on first use
+     */
+    private SymbolTable symbolTable = null;
+
+
+    /**
+     * The relocation summary, decoded on first use
+     */
+    private Relocations relocations = null;
+
+    /**
+     * The memory mapped ELF object
+     *
+     * Initially, this element is not set. It is mapped once on first use and
+     * all headers and tables are decoded from it.
+     */
+    private ByteBuffer image = null;
+
+    /**
+     * The number of files opened to map ELF objects, reported by Benchmark
+     */
+    static final AtomicInteger fileOpens = new AtomicInteger();
+
+    /**
+     * The cache consulted before parsing, or null
+     */
+    private Cache cache = null;
+
+
+    /**
+     * The layout of the structures of the ELF class, set with the ELF header
+     */
+    private Layout layout = null;
+
+
     /**
      * Initializes the object.
      *
@@ -98,18 +162,175 @@ public class Reader {
 	    throw new ReaderException("The elfPath is null", ex);
 	}
     }
+
+    /**
+     * Constructs a new Reader object which reads data from the
+     * given ELF object, or from the cache if it holds a valid entry
+     * for the ELF object.
+     *
+     * @param elfObject The file to the ELF object to be inspected.
+     * @param cache The cache to consult and update, or null
+     *
+     * @throws ReaderException if the elfObject cannot be used
+     */
+    public Reader(File elfObject, Cache cache) throws ReaderException {
+	initialize(elfObject);
+	this.cache = cache;
+    }
+
+    /**
+     * Constructs a new Reader object which reads data from the
+     * given ELF object, or from the cache if it holds a valid entry
+     * for the ELF object.
+     *
+     * @param elfPath The path to the ELF object to be inspected.
+     * @param cache The cache to consult and update, or null
+     *
+     * @throws ReaderException if the elfPath cannot be used
+     */
+    public Reader(String elfPath, Cache cache) throws ReaderException {
+	this(elfPath);
+	this.cache = cache;
+    }
+
+    /**
+     * Takes the headers from the cache if it holds a valid entry
+     *
+     * @return true if the headers are taken from the cache
+     */
+    private boolean readCache() {
+	if(this.cache == null) return false;
+	Cache.Entry entry = this.cache.get(this.elfObject);
+	if(entry == null) return false;
+	this.elfHeader = entry.elfHeader;
+	this.layout = Layout.of(entry.elfHeader.getELFClass());
+	this.programHeader = entry.programHeader;
+	return true;
+    }
     
-    private int readShort(InputStream is) throws IOException {
-	byte[] raw = new byte[2];
-	is.read(raw, 0, raw.length);
-	return ((int)(0x000000FF & raw[1]) << 8) | (int)(0x000000FF & raw[0]);
+    /**
+     * Maps the ELF object into memory.
+     *
+     * The whole file is mapped read-only once and every further decoding
+     * step (ELF header, program header, dynamic table and string table)
+     * works on this single buffer. The file descriptor is closed right
+     * after mapping, the mapping itself stays valid until the buffer is
+     * collected. The byte order of the buffer is the data encoding of the
+     * ELF object.
+     *
+     * @return The buffer containing the ELF object
+     */
+    private ByteBuffer getImage() throws ReaderException {
+	// Cache: Return the mapped image if present
+	if(this.image != null) return this.image;
+	RandomAccessFile raf = null;
+	try {
+	    raf = new RandomAccessFile(this.elfObject, "r");
+	    fileOpens.incrementAndGet();
+	    FileChannel channel = raf.getChannel();
+	    ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+	    boolean msb = buffer.limit() > 5 && buffer.get(5) == ELFHeader.Encoding.ELFDATA2MSB;
+	    buffer.order(msb ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+	    raf.close();
+	    raf = null;
+	    this.image = buffer;
+	} catch (Exception ex) {
+	    throw new ReaderException("Could not map ELF object", ex);
+	} finally {
+	    if (raf != null) {
+		try {
+		    raf.close();
+		} catch (IOException ex) {
+		    // Mapping failed already, which is reported instead
+		}
+	    }
+	}
+	return this.image;
+    }
+
+    private static int readShort(ByteBuffer image, int offset) {
+	return 0x0000FFFF & image.getShort(offset);
     }
     
-    private int readInteger(InputStream is) throws IOException {
-	byte[] raw = new byte[4];
-	is.read(raw, 0, raw.length);	
-	return ((int)(0x000000FF & raw[3]) << 24) | ((int)(0x000000FF & raw[2]) << 16) | 
-	    ((int)(0x000000FF & raw[1]) << 8) | (int)(0x000000FF & raw[0]);
+    private static int readInteger(ByteBuffer image, int offset) {
+	return image.getInt(offset);
+    }
+
+    /**
+     * Checks that a file offset read from the ELF object fits the 32 bits
+     * the headers keep
+     */
+    private static int toOffset(long offset) throws ReaderException {
+	if(offset < 0 || offset > Integer.MAX_VALUE) {
+	    throw new ReaderException(String.format("File offset 0x%x out of range", offset));
+	}
+	return (int)offset;
+    }
+
+    /**
+     * Gets the layout of the structures of the ELF object
+     */
+    private Layout getLayout() throws ReaderException {
+	getELFHeader();
+	return this.layout;
+    }
+
+    /**
+     * Reads a NUL terminated string from the image
+     *
+     * @param image The buffer containing the ELF object
+     * @param offset The file offset of the first character
+     *
+     * @throws ReaderException if the string is not terminated within the image
+     */
+    static String readString(ByteBuffer image, int offset) 
+	throws ReaderException {
+	int end = findStringEnd(image, offset);
+	byte[] array = new byte[end - offset];
+	for(int k = 0; k < array.length; k++) {
+	    array[k] = image.get(offset + k);
+	}
+	try {
+	    return new String(array, "US-ASCII");
+	} catch (UnsupportedEncodingException ex) {
+	    throw new ReaderException("Could not decode string", ex);
+	}
+    }
+
+    /**
+     * Interns a NUL terminated name from the image
+     *
+     * @param image The buffer containing the ELF object
+     * @param offset The file offset of the first character
+     *
+     * @return The id of the name in Names
+     *
+     * @throws ReaderException if the name is not terminated within the image
+     */
+    private static int readName(ByteBuffer image, int offset)
+	throws ReaderException {
+	int end = findStringEnd(image, offset);
+	return Names.intern(image, offset, end - offset);
+    }
+
+    /**
+     * Finds the NUL terminating a string in the image
+     *
+     * @return The offset of the NUL
+     *
+     * @throws ReaderException if the string is not terminated within the image
+     */
+    private static int findStringEnd(ByteBuffer image, int offset)
+	throws ReaderException {
+	if(offset < 0 || offset >= image.limit()) {
+	    throw new ReaderException("String offset outside of the ELF object");
+	}
+	int end = offset;
+	while(end < image.limit() && image.get(end) != 0) end++;
+	if(end >= image.limit()) {
+	    throw new ReaderException("Not enough bytes in strtab");
+	}
+	return end;
     }
 
     /**
@@ -120,13 +341,19 @@ public class Reader {
     public ELFHeader getELFHeader() throws ReaderException {
 	// Cache: Return cached elfHeader if present
 	if(this.elfHeader != null) return this.elfHeader;
-	FileInputStream fis = null;
+	if(readCache()) return this.elfHeader;
 	try {
-	    fis = new FileInputStream(this.elfObject);
+	    ByteBuffer image = getImage();
 	    ELFHeader header = new ELFHeader();
+
+	    if(image.limit() < 16) {
+		throw new ReaderException("File not identified as valid ELF file");
+	    }
 	    
 	    byte[] elfMagic = new byte[16];
-	    fis.read(elfMagic, 0, 16);
+	    for(int k = 0; k < elfMagic.length; k++) {
+		elfMagic[k] = image.get(k);
+	    }
 	    if(elfMagic[0] != 0x7f ||
 	       elfMagic[1] != 0x45 ||
 	       elfMagic[2] != 0x4c ||
@@ -135,237 +362,846 @@ public class Reader {
 	    }
 	    
 	    header.identifier = elfMagic;
+
+	    // The class decides on the size of addresses and offsets
+	    Layout layout = Layout.of(header.getELFClass());
+	    if(image.limit() < layout.ehdrSize) {
+		throw new ReaderException("File not identified as valid ELF file");
+	    }
 	    
 	    // Get the type information (byte offset 16 and 17)
-	    header.type	     = readShort(fis);
+	    header.type	     = readShort(image, 16);
 	    
 	    // Get the machine information (byte offset 18 and 19)
-	    header.machine   = readShort(fis);
+	    header.machine   = readShort(image, 18);
 	    
 	    // Get the version information (byte offset 20-23)
-	    header.version   = readInteger(fis);
+	    header.version   = readInteger(image, 20);
 	    
-	    // Get the entry point address (byte offset 24-27)
-	    header.entry     = readInteger(fis);
+	    // Get the entry point address (byte offset 24, 4 or 8 bytes)
+	    header.entry     = layout.readInt(image, layout.eEntry);
 
-	    // Get the header table file offset (byte offset 28-31)
-	    header.phoff     = readInteger(fis);
+	    // Get the header table file offset
+	    header.phoff     = toOffset(layout.readWord(image, layout.ePhOff));
 
-	    // Get the section header table file offset (byte offset 32-35)
-	    header.shoff     = readInteger(fis);
+	    // Get the section header table file offset
+	    header.shoff     = toOffset(layout.readWord(image, layout.eShOff));
 	    
-	    // Get the flags (byte offset 36-39)
-	    header.flags     = readInteger(fis);
+	    // Get the flags
+	    header.flags     = readInteger(image, layout.eFlags);
 	    
-	    // Get the ELF header size (byte offset 40 and 41)
-	    header.ehsize    = readShort(fis);
+	    // Get the ELF header size, the remaining fields are 2 bytes each
+	    int offset = layout.eEhSize;
+	    header.ehsize    = readShort(image, offset);
 	    
-	    // Get the size of each individual program header entry (byte offset 42 and 43)
-	    header.phentsize = readShort(fis);
+	    // Get the size of each individual program header entry
+	    header.phentsize = readShort(image, offset + 2);
 	    
-	    // Get the count of program header entries (byte offset 44 and 45)
-	    header.phnum     = readShort(fis);
+	    // Get the count of program header entries
+	    header.phnum     = readShort(image, offset + 4);
 	    
-	    // Get the size of each individual section header entry (byte offset 46 and 47)
-	    header.shentsize = readShort(fis);
+	    // Get the size of each individual section header entry
+	    header.shentsize = readShort(image, offset + 6);
 	    
-	    // Get the count of section header entries (byte offset 48 and 49)
-	    header.shnum     = readShort(fis);
+	    // Get the count of section header entries
+	    header.shnum     = readShort(image, offset + 8);
 	    
-	    // Get the index of the section header string table (byte offset 50 and 51)
-	    header.shstrndx  = readShort(fis);
+	    // Get the index of the section header string table
+	    header.shstrndx  = readShort(image, offset + 10);
 
+	    this.layout = layout;
 	    this.elfHeader = header;
 	} catch(ReaderException rex) {
 	    throw rex;  // Rethrow if this is already a ReaderException
 	} catch (Exception ex) {
 	    throw new ReaderException("Could not parse ELFHeader", ex);
-	} finally {
-	    if (fis != null) {
-		try {
-		    fis.close();
-		} catch (IOException ex) {
-		    throw new Error(ex.getMessage());
-		}
-	    }
 	}
 	return this.elfHeader;
     }
 
-    private Dynamic readDynamic(int offset, int size) throws Exception {
-	    FileInputStream fis = new FileInputStream(elfObject);
-	    fis.skip(offset);
-	    
-	    Dynamic.DT[] dtlist = new Dynamic.DT[size / 8];
-	    
-
-	    {
-		int j = 0;
-
-		for(int i = offset; i < (offset + size); i += 8) {
-		    int tag = readInteger(fis);
-		    int un = readInteger(fis);
-
-		    Dynamic.DT dt = new Dynamic.DT();
-		    dt.tag = tag;
-		
-		    if((dt.tag >= 3 && dt.tag <= 7) ||
-		       (dt.tag >= 12 && dt.tag <= 13) ||
-		       dt.tag == 17 || dt.tag == 21 || dt.tag == 23) {
-			dt.ptr =  un;
-		    } else if(!(dt.tag == 0 || dt.tag == 16 || 
-				dt.tag == 22 || dt.tag > 23)) {
-			dt.val = un;
-		    }
-		
-		    dtlist[j] = dt;
-		    j++;
-		}
-	    }
-	    
-	    fis.close();
-	    
-	    Dynamic d = new Dynamic();
-	    d.dtList = dtlist;
+    /**
+     * Tells whether the dynamic table entry with the given tag holds a pointer
+     */
+    private static boolean isPointer(int tag) {
+	return (tag >= 3 && tag <= 7) ||
+	    (tag >= 12 && tag <= 13) ||
+	    tag == 17 || tag == 21 || tag == 23 ||
+	    tag == Dynamic.DT.Tag.GNU_HASH;
+    }
 
-	    // Read the STRTAB
-	    
-	    int strtabOffset = 0;
-	    for(int i = 0; i < d.dtList.length; i++) { // Fin dstrtab
-		if(d.dtList[i].getTag() == Dynamic.DT.Tag.STRTAB)
-		    {
-			strtabOffset = d.dtList[i].getPtr();
-			break;
-		    }
-	    }
+    /**
+     * Tells whether the dynamic table entry with the given tag holds a value
+     */
+    private static boolean isValue(int tag) {
+	return !isPointer(tag) &&
+	    (!(tag == 0 || tag == 16 || tag == 22 || tag > 23) ||
+	     tag == Dynamic.DT.Tag.FLAGS);
+    }
 
-	    for(int i = 0; i < d.dtList.length; i++) {
-		Dynamic.DT dt = d.dtList[i];
-		int tag = dt.getTag();
-		if(tag == Dynamic.DT.Tag.NEEDED ||
-		   tag == Dynamic.DT.Tag.RPATH ||
-		   tag == Dynamic.DT.Tag.SONAME) {
-		    
-		    FileInputStream fisStrTab = new FileInputStream(elfObject);
-		    fisStrTab.skip(strtabOffset);
-		    fisStrTab.skip(dt.getVal());
-		    
-		    ArrayList<Byte> byteList = new ArrayList<Byte>();
-		    while(true) {
-			int b = fisStrTab.read();
-			
-			if(b < 0) {
-			    fisStrTab.close();
-			    throw new ReaderException("Not enough bytes in strtab");
-			}
-			else if(b > 0) {
-			    byteList.add((byte)b);
-			}
-			else {
-			    byte[] array = new byte[byteList.size()];
-			    for(int k = 0; k < array.length; k++) {
-				array[k] = byteList.get(k);
-			    }
-			    dt.name = new String(array, "US-ASCII");
-			    break;
-			}
-		    }
+    /**
+     * Tells whether the value of a dynamic table entry points into the
+     * string table
+     */
+    private static boolean isName(int tag) {
+	return tag == Dynamic.DT.Tag.NEEDED ||
+	    tag == Dynamic.DT.Tag.RPATH ||
+	    tag == Dynamic.DT.Tag.SONAME;
+    }
 
-		    fisStrTab.close();
-		}
+    /**
+     * Finds the string table of a dynamic table in the image
+     *
+     * @param offset The file offset of the dynamic table
+     * @param end The file offset following the last entry
+     *
+     * @return The file offset of the string table, or -1 if there is none
+     */
+    private static int findStrtab(Layout layout, ByteBuffer image, int offset, int end,
+				  SegmentIndex index)
+	throws ReaderException {
+	for(int i = offset; i < end; i += layout.dynentSize) {
+	    if(layout.readInt(image, i) == Dynamic.DT.Tag.STRTAB) {
+		return toFileOffset(index, layout.readWord(image, i + layout.wordSize));
 	    }
-	    return d;
+	}
+	return -1;
     }
 
-    private ProgramHeader.Entry getProgramHeaderEntry(int offset, int size) 
+    /**
+     * Checks that a dynamic table and its names lie within the image, and
+     * interns the names
+     *
+     * @return The ids of the names of the entries in Names, -1 for entries
+     *         without a name
+     */
+    private static int[] checkDynamic(Layout layout, ByteBuffer image, int offset, int size,
+				      SegmentIndex index)
 	throws ReaderException {
-	if(size < 8) throw new ReaderException("Can't allocate Program Header Entry Size");
-	
-	ProgramHeader.Entry entry = new ProgramHeader.Entry();
-	FileInputStream fis = null;
-	try {
-	    fis = new FileInputStream(elfObject);
-	    fis.skip(offset);
-	    
-	    entry.type	 = readInteger(fis);
-	    entry.offset = readInteger(fis);
-	    entry.vaddr	 = readInteger(fis);
-	    entry.paddr	 = readInteger(fis);
-	    entry.filesz = readInteger(fis);
-	    entry.memsz	 = readInteger(fis);
-	    entry.flags	 = readInteger(fis);
-	    entry.align	 = readInteger(fis);
-
-	    if (entry.getType() == ProgramHeader.Entry.Type.DYNAMIC) {
-		entry.dynamic = readDynamic(entry.getOffset(), entry.getFileSZ());
-	    }
-	
-	} catch (Exception ex) {
-	    throw new ReaderException("Could not parse program header entry", ex);
-	} finally {
-	    if (fis != null) {
-		try {
-		    fis.close();
-		} catch (IOException ex) {
-		    throw new Error(ex.getMessage());
-		}
+	if(offset < 0 || size < 0 || (long)offset + size > image.limit()) {
+	    throw new ReaderException("Dynamic table outside of the ELF object");
+	}
+	int count = size / layout.dynentSize;
+	int end = offset + count * layout.dynentSize;
+	int strtabOffset = findStrtab(layout, image, offset, end, index);
+	int[] nameIds = new int[count];
+	for(int i = 0; i < count; i++) {
+	    int entry = offset + i * layout.dynentSize;
+	    nameIds[i] = -1;
+	    if(!isName(layout.readInt(image, entry))) continue;
+	    if(strtabOffset < 0) {
+		throw new ReaderException("Dynamic table without string table");
 	    }
+	    nameIds[i] = readName(image, strtabOffset + layout.readInt(image, entry + layout.wordSize));
 	}
+	return nameIds;
+    }
+
+    /**
+     * Decodes a program header entry, for ProgramHeader
+     *
+     * The program header is checked by getProgramHeader() before, which
+     * leaves the image, the ELF header and the layout in place, so
+     * decoding can't fail.
+     */
+    ProgramHeader.Entry readProgramHeaderEntry(int ndx) {
+	ProgramHeader.Entry entry = new ProgramHeader.Entry();
+	ByteBuffer image = this.image;
+	Layout layout = this.layout;
+	int offset = this.elfHeader.getPHOff() + ndx * this.elfHeader.getPHEntSize();
 
+	entry.type   = readInteger(image, offset);
+	entry.offset = layout.readInt(image, offset + layout.pOffset);
+	entry.vaddr  = layout.readInt(image, offset + layout.pVAddr);
+	entry.paddr  = layout.readInt(image, offset + layout.pPAddr);
+	entry.filesz = layout.readInt(image, offset + layout.pFileSZ);
+	entry.memsz  = layout.readInt(image, offset + layout.pMemSZ);
+	entry.flags  = readInteger(image, offset + layout.pFlags);
+	entry.align  = layout.readInt(image, offset + layout.pAlign);
 	return entry;
     }
-    
+
+    /**
+     * Decodes a dynamic table entry, for Dynamic
+     *
+     * The names are interned by getProgramHeader() already, so decoding
+     * can't fail.
+     *
+     * @param offset The file offset of the dynamic table
+     * @param ndx The index of the entry
+     * @param nameId The id of the name of the entry, or -1
+     */
+    Dynamic.DT readDT(int offset, int ndx, int nameId) {
+	Dynamic.DT dt = new Dynamic.DT();
+	ByteBuffer image = this.image;
+	Layout layout = this.layout;
+	int entry = offset + ndx * layout.dynentSize;
+	int tag = layout.readInt(image, entry);
+	int un = layout.readInt(image, entry + layout.wordSize);
+	dt.tag = tag;
+
+	if(isPointer(tag)) {
+	    dt.ptr =  un;
+	} else if(isValue(tag)) {
+	    dt.val = un;
+	}
+	dt.nameId = nameId;
+	return dt;
+    }
 
     /**
      * Returns the ProgramHeader object
      *
+     * The program header table and the dynamic tables are checked and the
+     * names of the dynamic tables interned, entries are decoded on request.
+     * With a cache, all entries are decoded and put into the cache.
+     *
      * @return This will get the ProgramHeader from the ELF Object
      */
     public ProgramHeader getProgramHeader() throws ReaderException {
 	// Cache: If the program header is present, return it
 	if(this.programHeader != null) return this.programHeader;
+	if(readCache()) return this.programHeader;
 	
     
 	ELFHeader	header = getELFHeader();	// Load if not present yet
-	    
-	ProgramHeader.Entry[] entries = 
-	    new ProgramHeader.Entry[header.getPHNum()];
-	    
+	ByteBuffer	image = getImage();
+	Layout		layout = getLayout();
+	int		phoff = checkProgramHeader(image);
+	int		size = header.getPHEntSize();
+
+	// The dynamic tables point into the loadable segments, which may be
+	// listed after them
+	SegmentIndex index = getSegmentIndex();
+	Dynamic[] dynamics = new Dynamic[header.getPHNum()];
 	for(int k = 0; k < header.getPHNum(); k++) {
-	    int size = header.getPHEntSize();
-	    entries[k] = 
-		getProgramHeaderEntry(header.getPHOff() + (k * size), size);
+	    int offset = phoff + k * size;
+	    if(readInteger(image, offset) == ProgramHeader.Entry.Type.DYNAMIC) {
+		try {
+		    int dynamicOffset = toOffset(layout.readWord(image, offset + layout.pOffset));
+		    int[] nameIds = checkDynamic(layout, image, dynamicOffset,
+						 layout.readInt(image, offset + layout.pFileSZ), index);
+		    dynamics[k] = new Dynamic(this, dynamicOffset, nameIds);
+		} catch (ReaderException ex) {
+		    throw new ReaderException("Could not parse program header entry", ex);
+		}
+	    }
 	}
-	    
-	this.programHeader = new ProgramHeader(entries);
+	ProgramHeader programHeader = new ProgramHeader(this, dynamics);
+
+	if(this.cache != null) {
+	    programHeader.load();
+	    this.cache.put(this.elfObject, header, programHeader);
+	}
+	this.programHeader = programHeader;
 	return this.programHeader;
     }
 
+    private SectionHeader.Entry getSectionHeaderEntry(ByteBuffer image, int offset, int size)
+	throws ReaderException {
+	Layout layout = getLayout();
+	if(size < layout.shentSize) throw new ReaderException("Can't allocate Section Header Entry Size");
+	if(offset < 0 || offset + layout.shentSize > image.limit()) {
+	    throw new ReaderException("Section header entry outside of the ELF object");
+	}
+
+	SectionHeader.Entry entry = new SectionHeader.Entry();
+	entry.nameOffset = readInteger(image, offset);
+	entry.type	 = readInteger(image, offset + 4);
+	entry.flags	 = layout.readInt(image, offset + layout.sFlags);
+	entry.addr	 = layout.readInt(image, offset + layout.sAddr);
+	entry.offset	 = layout.readInt(image, offset + layout.sOffset);
+	entry.size	 = layout.readInt(image, offset + layout.sSize);
+	entry.link	 = readInteger(image, offset + layout.sLink);
+	entry.info	 = readInteger(image, offset + layout.sInfo);
+	entry.addralign  = layout.readInt(image, offset + layout.sAddrAlign);
+	entry.entsize	 = layout.readInt(image, offset + layout.sEntSize);
+	return entry;
+    }
+
+    private static int toFileOffset(SegmentIndex index, int vaddr) throws ReaderException {
+	return toFileOffset(index, vaddr & 0xFFFFFFFFL);
+    }
+
+    private static int toFileOffset(SegmentIndex index, long vaddr) throws ReaderException {
+	long offset = index.toFileOffset(vaddr);
+	if(offset < 0 || offset > Integer.MAX_VALUE) {
+	    throw new ReaderException(String.format("Address 0x%x is not in a loadable segment", vaddr));
+	}
+	return (int)offset;
+    }
+
+    /**
+     * Translates a virtual address into a file offset
+     *
+     * Pointers in the dynamic table (DT_STRTAB, DT_SYMTAB, DT_HASH, DT_REL,
+     * ...) are virtual addresses, which only equal the file offset if the
+     * first segment is loaded at address 0. The address is looked up in the
+     * loadable segments of the program header instead.
+     *
+     * @param vaddr The virtual address
+     * @return The file offset
+     *
+     * @throws ReaderException if the address is not backed by a loadable segment
+     */
+    public int toFileOffset(int vaddr) throws ReaderException {
+	return toFileOffset(getSegmentIndex(), vaddr);
+    }
+
+    /**
+     * Gets the index of the loadable segments
+     *
+     * Taken from the program header if it is parsed already, read straight
+     * from the program header table otherwise.
+     */
+    private SegmentIndex getSegmentIndex() throws ReaderException {
+	if(this.segmentIndex != null) return this.segmentIndex;
+	if(this.programHeader != null && this.programHeader.isLoaded()) {
+	    this.segmentIndex = new SegmentIndex(this.programHeader);
+	    return this.segmentIndex;
+	}
+
+	ByteBuffer image = getImage();
+	int phoff = checkProgramHeader(image);
+	ELFHeader header = getELFHeader();
+	Layout layout = this.layout;
+	int size = header.getPHEntSize();
+	int count = 0;
+	for(int k = 0; k < header.getPHNum(); k++) {
+	    if(readInteger(image, phoff + k * size) == ProgramHeader.Entry.Type.LOAD) count++;
+	}
+	long[] starts = new long[count];
+	long[] sizes = new long[count];
+	long[] offsets = new long[count];
+	count = 0;
+	for(int k = 0; k < header.getPHNum(); k++) {
+	    int offset = phoff + k * size;
+	    if(readInteger(image, offset) != ProgramHeader.Entry.Type.LOAD) continue;
+	    offsets[count] = layout.readWord(image, offset + layout.pOffset);
+	    starts[count] = layout.readWord(image, offset + layout.pVAddr);
+	    sizes[count] = layout.readWord(image, offset + layout.pFileSZ);
+	    count++;
+	}
+	this.segmentIndex = new SegmentIndex(starts, sizes, offsets);
+	return this.segmentIndex;
+    }
+
+    /**
+     * Checks that the program header table lies within the image
+     *
+     * @return The file offset of the program header table
+     */
+    private int checkProgramHeader(ByteBuffer image) throws ReaderException {
+	ELFHeader header = getELFHeader();
+	int size = header.getPHEntSize();
+	if(header.getPHNum() > 0 && size < this.layout.phentSize) {
+	    throw new ReaderException("Can't allocate Program Header Entry Size");
+	}
+	int phoff = header.getPHOff();
+	if(phoff < 0 || phoff + (long)header.getPHNum() * size > image.limit()) {
+	    throw new ReaderException("Program header entry outside of the ELF object");
+	}
+	return phoff;
+    }
+
+    /**
+     * Passes the program header and dynamic table entries to a visitor
+     *
+     * If the program header is decoded already, or taken from the cache,
+     * its entries are visited. Otherwise the entries are decoded straight
+     * from the mapped ELF object one by one, without creating an object
+     * per entry, and nothing is kept. A reader with a cache always parses
+     * the program header, so the cache is filled.
+     *
+     * @param visitor The visitor
+     *
+     * @throws ReaderException if the ELF object can't be parsed
+     */
+    public void accept(Visitor visitor) throws ReaderException {
+	if(this.programHeader == null && this.cache != null) {
+	    getProgramHeader();
+	}
+	if(this.programHeader != null && this.programHeader.isLoaded()) {
+	    acceptParsed(visitor);
+	    return;
+	}
+
+	ByteBuffer image = getImage();
+	int phoff = checkProgramHeader(image);
+	ELFHeader header = getELFHeader();
+	Layout layout = this.layout;
+	int size = header.getPHEntSize();
+	SegmentIndex index = getSegmentIndex();
+
+	for(int k = 0; k < header.getPHNum(); k++) {
+	    int offset = phoff + k * size;
+	    int type = readInteger(image, offset);
+	    int dynamicOffset = layout.readInt(image, offset + layout.pOffset);
+	    int filesz = layout.readInt(image, offset + layout.pFileSZ);
+	    visitor.onProgramHeader(type,
+				    dynamicOffset,
+				    layout.readInt(image, offset + layout.pVAddr),
+				    layout.readInt(image, offset + layout.pPAddr),
+				    filesz,
+				    layout.readInt(image, offset + layout.pMemSZ),
+				    readInteger(image, offset + layout.pFlags),
+				    layout.readInt(image, offset + layout.pAlign));
+	    if(type == ProgramHeader.Entry.Type.DYNAMIC) {
+		acceptDynamic(visitor, layout, image, dynamicOffset, filesz, index);
+	    }
+	}
+    }
+
+    /**
+     * Passes the entries of a dynamic table in the image to a visitor
+     */
+    private static void acceptDynamic(Visitor visitor, Layout layout, ByteBuffer image,
+				      int offset, int size, SegmentIndex index)
+	throws ReaderException {
+	if(offset < 0 || size < 0 || (long)offset + size > image.limit()) {
+	    throw new ReaderException("Dynamic table outside of the ELF object");
+	}
+	int end = offset + (size / layout.dynentSize) * layout.dynentSize;
+	int strtabOffset = findStrtab(layout, image, offset, end, index);
+
+	for(int i = offset; i < end; i += layout.dynentSize) {
+	    int tag = layout.readInt(image, i);
+	    int un = layout.readInt(image, i + layout.wordSize);
+	    visitor.onDynamic(tag, isPointer(tag) || isValue(tag) ? un : 0);
+	    if(isName(tag)) {
+		if(strtabOffset < 0) {
+		    throw new ReaderException("Dynamic table without string table");
+		}
+		visitor.onName(tag, readName(image, strtabOffset + un));
+	    }
+	}
+    }
+
+    /**
+     * Passes the entries of the parsed program header to a visitor
+     */
+    private void acceptParsed(Visitor visitor) {
+	ProgramHeader header = this.programHeader;
+	for(int i = 0; i < header.size(); i++) {
+	    ProgramHeader.Entry entry = header.getEntry(i);
+	    visitor.onProgramHeader(entry.type, entry.offset, entry.vaddr, entry.paddr,
+				    entry.filesz, entry.memsz, entry.flags, entry.align);
+	    Dynamic dynamic = entry.getDynamic();
+	    if(dynamic == null) continue;
+	    for(int j = 0; j < dynamic.size(); j++) {
+		Dynamic.DT dt = dynamic.getDT(j);
+		visitor.onDynamic(dt.tag, isPointer(dt.tag) ? dt.ptr : dt.val);
+		if(dt.nameId >= 0) visitor.onName(dt.tag, dt.nameId);
+	    }
+	}
+    }
+
+    /**
+     * Collects the first value of the dynamic table entries used to locate
+     * the symbol table and the relocations
+     */
+    private static class DTValues extends Visitor.Adapter {
+	/**
+	 * Tags 0 up to 30 are kept by tag, GNU_HASH in the last slot
+	 */
+	private int[] values = new int[32];
+	private boolean[] present = new boolean[32];
+
+	private static int slot(int tag) {
+	    if(tag >= 0 && tag < 31) return tag;
+	    return tag == Dynamic.DT.Tag.GNU_HASH ? 31 : -1;
+	}
+
+	public void onDynamic(int tag, int value) {
+	    int slot = slot(tag);
+	    if(slot >= 0 && !present[slot]) {
+		present[slot] = true;
+		values[slot] = value;
+	    }
+	}
+
+	boolean has(int tag) { return present[slot(tag)]; }
+
+	int get(int tag) { return values[slot(tag)]; }
+    }
+
+    /**
+     * The collected dynamic table values, read on first use
+     */
+    private DTValues dtValues = null;
+
+    private DTValues getDTValues() throws ReaderException {
+	if(this.dtValues == null) {
+	    DTValues values = new DTValues();
+	    accept(values);
+	    this.dtValues = values;
+	}
+	return this.dtValues;
+    }
+
+    /**
+     * Returns the dynamic symbol table
+     *
+     * The table is located through the DT_SYMTAB, DT_STRTAB, DT_HASH and
+     * DT_GNU_HASH entries of the dynamic table.
+     *
+     * @return The dynamic symbol table, or null if the ELF object has none
+     */
+    public SymbolTable getSymbolTable() throws ReaderException {
+	if(this.symbolTable != null) return this.symbolTable;
+
+	DTValues dts = getDTValues();
+	if(!dts.has(Dynamic.DT.Tag.SYMTAB) || !dts.has(Dynamic.DT.Tag.STRTAB)) return null;
+
+	this.symbolTable = 
+	    new SymbolTable(getLayout(), getImage(),
+			    toFileOffset(dts.get(Dynamic.DT.Tag.SYMTAB)),
+			    toFileOffset(dts.get(Dynamic.DT.Tag.STRTAB)),
+			    dts.get(Dynamic.DT.Tag.STRSZ),
+			    dts.has(Dynamic.DT.Tag.HASH) ? toFileOffset(dts.get(Dynamic.DT.Tag.HASH)) : -1,
+			    dts.has(Dynamic.DT.Tag.GNU_HASH) ? toFileOffset(dts.get(Dynamic.DT.Tag.GNU_HASH)) : -1);
+	return this.symbolTable;
+    }
+
+    /**
+     * Counts the entries of a relocation table by type
+     */
+    private static void countRelocations(Relocations relocations, Layout layout, ByteBuffer image,
+					 int offset, int size, int entsize) throws ReaderException {
+	if(entsize < layout.relentSize) throw new ReaderException("Invalid relocation entry size");
+	if(offset < 0 || size < 0 || (long)offset + size > image.limit()) {
+	    throw new ReaderException("Relocation table outside of the ELF object");
+	}
+	// r_offset is followed by r_info, which has the type in its low bits
+	for(int i = offset; i + entsize <= offset + size; i += entsize) {
+	    relocations.add(layout.readRelocationType(image, i + layout.wordSize));
+	}
+    }
+
+    /**
+     * Returns the relocation summary
+     *
+     * Covers the DT_REL, DT_RELA and DT_JMPREL tables, and the DT_TEXTREL
+     * entry and DF_TEXTREL flag. The summary is kept in the cache, if any.
+     *
+     * @return The relocation summary, empty if there is no dynamic table
+     */
+    public Relocations getRelocations() throws ReaderException {
+	if(this.relocations != null) return this.relocations;
+	if(this.cache != null) {
+	    this.relocations = this.cache.getRelocations(this.elfObject);
+	    if(this.relocations != null) return this.relocations;
+	}
+
+	Relocations relocations = new Relocations();
+	relocations.machine = getELFHeader().getMachine();
+	ByteBuffer image = getImage();
+	Layout layout = getLayout();
+
+	DTValues dts = getDTValues();
+
+	if(dts.has(Dynamic.DT.Tag.REL) && dts.has(Dynamic.DT.Tag.RELSZ)) {
+	    countRelocations(relocations, layout, image, toFileOffset(dts.get(Dynamic.DT.Tag.REL)),
+			     dts.get(Dynamic.DT.Tag.RELSZ),
+			     dts.has(Dynamic.DT.Tag.RELENT) ? dts.get(Dynamic.DT.Tag.RELENT) : layout.relentSize);
+	}
+
+	if(dts.has(Dynamic.DT.Tag.RELA) && dts.has(Dynamic.DT.Tag.RELASZ)) {
+	    int entsize = dts.has(Dynamic.DT.Tag.RELAENT) ? dts.get(Dynamic.DT.Tag.RELAENT) : layout.relaentSize;
+	    int relasz = dts.get(Dynamic.DT.Tag.RELASZ);
+	    countRelocations(relocations, layout, image, toFileOffset(dts.get(Dynamic.DT.Tag.RELA)), relasz, entsize);
+	    relocations.rela += relasz / entsize;
+	}
+
+	if(dts.has(Dynamic.DT.Tag.JMPREL) && dts.has(Dynamic.DT.Tag.PLTRELSZ)) {
+	    boolean isRela = dts.has(Dynamic.DT.Tag.PLTREL) &&
+		dts.get(Dynamic.DT.Tag.PLTREL) == Dynamic.DT.Tag.RELA;
+	    int entsize = isRela ? layout.relaentSize : layout.relentSize;
+	    int pltrelsz = dts.get(Dynamic.DT.Tag.PLTRELSZ);
+	    countRelocations(relocations, layout, image, toFileOffset(dts.get(Dynamic.DT.Tag.JMPREL)), pltrelsz, entsize);
+	    if(isRela) relocations.rela += pltrelsz / entsize;
+	}
+
+	// DF_TEXTREL
+	relocations.textRelocations = dts.has(Dynamic.DT.Tag.TEXTREL) ||
+	    (dts.get(Dynamic.DT.Tag.FLAGS) & 0x4) != 0;
+
+	if(this.cache != null) this.cache.putRelocations(this.elfObject, relocations);
+	this.relocations = relocations;
+	return this.relocations;
+    }
+
+    /**
+     * Returns the SectionHeader object
+     *
+     * The section header is not cached, it is only parsed by analyses which
+     * need it. Stripped ELF objects may come without, which results in an
+     * empty section header.
+     *
+     * @return This will get the SectionHeader from the ELF Object
+     */
+    public SectionHeader getSectionHeader() throws ReaderException {
+	// Cache: If the section header is present, return it
+	if(this.sectionHeader != null) return this.sectionHeader;
+
+	ELFHeader header = getELFHeader();	// Load if not present yet
+	ByteBuffer image = getImage();
+	int shoff = header.getSHOff();
+	int shnum = header.getSHNum();
+	int shstrndx = header.getSHStrNdx();
+	int size = header.getSHEntSize();
+
+	if(shoff == 0) {
+	    this.sectionHeader = new SectionHeader(new SectionHeader.Entry[0]);
+	    return this.sectionHeader;
+	}
+
+	// Extended numbering: the real values are kept in the first entry
+	if(shnum == 0 || shstrndx == 0xffff) {
+	    SectionHeader.Entry first = getSectionHeaderEntry(image, shoff, size);
+	    if(shnum == 0) shnum = first.size;
+	    if(shstrndx == 0xffff) shstrndx = first.link;
+	}
+	if(shnum < 0 || shoff < 0 || shoff + (long)shnum * size > image.limit()) {
+	    throw new ReaderException("Section header outside of the ELF object");
+	}
+
+	SectionHeader.Entry[] entries = new SectionHeader.Entry[shnum];
+	for(int k = 0; k < shnum; k++) {
+	    entries[k] = getSectionHeaderEntry(image, shoff + (k * size), size);
+	}
+
+	if(shstrndx > 0 && shstrndx < shnum) {
+	    SectionHeader.Entry strtab = entries[shstrndx];
+	    for(int k = 0; k < shnum; k++) {
+		if(entries[k].nameOffset < 0 || entries[k].nameOffset >= strtab.size) continue;
+		entries[k].name = readString(image, strtab.offset + entries[k].nameOffset);
+	    }
+	}
+
+	this.sectionHeader = new SectionHeader(entries);
+	return this.sectionHeader;
+    }
+
+    /**
+     * Gets the contents of a section
+     *
+     * The contents are a read-only view into the mapped ELF object, nothing
+     * is copied. Sections which occupy no space in the file (.bss) have no
+     * contents.
+     *
+     * @param entry The section header entry
+     * @return The contents of the section, in the byte order of the ELF object
+     */
+    public ByteBuffer getSectionData(SectionHeader.Entry entry) throws ReaderException {
+	ByteBuffer image = getImage();
+	if(entry.getType() == SectionHeader.Entry.Type.NOBITS) {
+	    return ByteBuffer.allocate(0).order(image.order());
+	}
+	long offset = entry.getOffset() & 0xFFFFFFFFL;
+	long size = entry.getSize() & 0xFFFFFFFFL;
+	if(offset + size > image.limit()) {
+	    throw new ReaderException("Section " + entry.getName() + " outside of the ELF object");
+	}
+	ByteBuffer data = image.duplicate();
+	data.limit((int)(offset + size));
+	data.position((int)offset);
+	return data.slice().asReadOnlyBuffer().order(image.order());
+    }
+
+    /**
+     * Gets the contents of a section by name
+     *
+     * @param name The name of the section, such as .dynstr
+     * @return The contents of the section, or null if there is no such section
+     */
+    public ByteBuffer getSectionData(String name) throws ReaderException {
+	SectionHeader.Entry entry = getSectionHeader().getEntry(name);
+	if(entry == null) return null;
+	return getSectionData(entry);
+    }
+
+    /**
+     * Collects the names of the NEEDED entries
+     */
+    private static class NeededIds extends DTValues {
+	int[] ids = new int[8];
+	int count = 0;
+	int soname = -1;
+
+	public void onName(int tag, int nameId) {
+	    if(tag == Dynamic.DT.Tag.SONAME && soname < 0) soname = nameId;
+	    if(tag != Dynamic.DT.Tag.NEEDED) return;
+	    if(count == ids.length) {
+		int[] grown = new int[count * 2];
+		System.arraycopy(ids, 0, grown, 0, count);
+		ids = grown;
+	    }
+	    ids[count++] = nameId;
+	}
+
+	int[] toArray() {
+	    int[] array = new int[count];
+	    System.arraycopy(ids, 0, array, 0, count);
+	    return array;
+	}
+    }
+
+    /**
+     * Visits the dynamic tables once, collecting the NEEDED and SONAME
+     * names and the values getRelocations() and getSymbolTable() need
+     */
+    private NeededIds visitNames() throws ReaderException {
+	NeededIds needed = new NeededIds();
+	accept(needed);
+	if(this.dtValues == null) this.dtValues = needed;
+	return needed;
+    }
+
+    /**
+     * Gets the ids of all the library dependencies
+     *
+     * Like getLibraryDependencies(), but returns the ids of the names in
+     * Names, which compare faster than the names themselves.
+     */
+    public int[] getLibraryDependencyIds() throws ReaderException {
+	return visitNames().toArray();
+    }
+
     /**
      * Gets all the library dependencies
      *
      * Looks in all DYNAMIC program header segments and returns the different
-     * libraries where this object depents upon.
+     * libraries where this object depents upon. The entries are visited, the
+     * program header is not kept unless parsed already.
      */
     public String[] getLibraryDependencies() throws ReaderException {
-	
-	ArrayList<String>	list   = new ArrayList<String>();
-	ProgramHeader		header = this.getProgramHeader();
-	
-	for(int i = 0; i < header.size(); i++) {
-	    ProgramHeader.Entry entry = header.getEntry(i);
-	    if(entry.type == ProgramHeader.Entry.Type.DYNAMIC) {
-		for(int j = 0; j < entry.getDynamic().size(); j++) {
-		    Dynamic.DT dt = entry.getDynamic().getDT(j);
-		    if(dt.tag == Dynamic.DT.Tag.NEEDED) {
-			list.add(dt.getName());
+	int[] ids = getLibraryDependencyIds();
+	String[] array = new String[ids.length];
+	for(int i = 0; i < ids.length; i++) {
+	    array[i] = Names.getName(ids[i]);
+	}
+	return array;
+    }
+
+    /**
+     * An ELF object parsed by a readAll() worker
+     */
+    private static class Parsed {
+	Reader reader;
+	int[] dependencyIds;
+	int sonameId;
+	Relocations relocations;
+    }
+
+    /**
+     * Reads many ELF objects concurrently
+     *
+     * The ELF header, program header and dynamic tables of every ELF object
+     * are parsed on the given executor, which is left running, and the ids
+     * of its library dependencies and SONAME collected in one pass. The
+     * size of the executor bounds how many ELF objects are parsed at the
+     * same time. The file of an ELF object is closed once mapped, the
+     * mapping stays as long as its reader is referenced.
+     *
+     * @param files The ELF objects
+     * @param executor The executor to parse on
+     * @param cache The cache to consult and update, or null
+     *
+     * @return The readers of the parsed ELF objects and the errors of the others
+     *
+     * @throws ReaderException if interrupted while waiting for the executor
+     */
+    public static BatchResult readAll(Collection<File> files, ExecutorService executor,
+				      Cache cache)
+	throws ReaderException {
+	return readAll(files, executor, cache, BatchResult.READERS);
+    }
+
+    /**
+     * Reads many ELF objects concurrently, keeping what is asked for
+     *
+     * Like readAll(Collection, ExecutorService, Cache). The readers, and
+     * with them the mapped ELF objects, are only kept with
+     * BatchResult.READERS, so a batch of ids doesn't map all ELF objects at
+     * once. With BatchResult.RELOCATIONS the workers count the relocations
+     * as well, while the ELF object is at hand.
+     *
+     * @param files The ELF objects
+     * @param executor The executor to parse on
+     * @param cache The cache to consult and update, or null
+     * @param options The BatchResult options, or 0
+     *
+     * @return The readers of the parsed ELF objects and the errors of the others
+     *
+     * @throws ReaderException if interrupted while waiting for the executor
+     */
+    public static BatchResult readAll(Collection<File> files, ExecutorService executor,
+				      final Cache cache, final int options)
+	throws ReaderException {
+	LinkedHashMap<File, Future<Parsed>> futures = new LinkedHashMap<File, Future<Parsed>>();
+	for(final File file : files) {
+	    if(futures.containsKey(file)) continue;
+	    futures.put(file, executor.submit(new Callable<Parsed>() {
+		    public Parsed call() throws Exception {
+			Parsed parsed = new Parsed();
+			Reader reader = new Reader(file, cache);
+			NeededIds needed = reader.visitNames();
+			parsed.dependencyIds = needed.toArray();
+			parsed.sonameId = needed.soname;
+			if((options & BatchResult.RELOCATIONS) != 0) {
+			    parsed.relocations = reader.getRelocations();
+			}
+			if((options & BatchResult.READERS) != 0) {
+			    parsed.reader = reader;
+			}
+			return parsed;
 		    }
-		}		
+		}));
+	}
+
+	LinkedHashMap<File, Reader> readers = new LinkedHashMap<File, Reader>();
+	LinkedHashMap<File, int[]> dependencyIds = new LinkedHashMap<File, int[]>();
+	LinkedHashMap<File, Integer> sonameIds = new LinkedHashMap<File, Integer>();
+	LinkedHashMap<File, Relocations> relocations = new LinkedHashMap<File, Relocations>();
+	LinkedHashMap<File, ReaderException> errors = new LinkedHashMap<File, ReaderException>();
+	try {
+	    for(Map.Entry<File, Future<Parsed>> e : futures.entrySet()) {
+		try {
+		    Parsed parsed = e.getValue().get();
+		    if(parsed.reader != null) readers.put(e.getKey(), parsed.reader);
+		    dependencyIds.put(e.getKey(), parsed.dependencyIds);
+		    if(parsed.sonameId >= 0) sonameIds.put(e.getKey(), Integer.valueOf(parsed.sonameId));
+		    if(parsed.relocations != null) relocations.put(e.getKey(), parsed.relocations);
+		} catch (ExecutionException ex) {
+		    Throwable cause = ex.getCause();
+		    errors.put(e.getKey(), cause instanceof ReaderException
+			       ? (ReaderException)cause
+			       : new ReaderException("Could not read ELF object", cause));
+		}
 	    }
+	} catch (InterruptedException ex) {
+	    for(Future<Parsed> future : futures.values()) future.cancel(true);
+	    throw new ReaderException("Interrupted while reading ELF objects", ex);
 	}
-	
-	String[] array = new String[list.size()];
-	return list.toArray(array);
+	return new BatchResult(readers, dependencyIds, sonameIds, relocations, errors);
     }
-    
-}
\ No newline at end of file
+
+    /**
+     * Reads many ELF objects concurrently on all available processors
+     *
+     * @param files The ELF objects
+     *
+     * @return The readers of the parsed ELF objects and the errors of the others
+     *
+     * @throws ReaderException if interrupted while reading
+     */
+    public static BatchResult readAll(Collection<File> files) throws ReaderException {
+	int threads = Runtime.getRuntime().availableProcessors();
+	ExecutorService executor = Executors.newFixedThreadPool(threads);
+	try {
+	    return readAll(files, executor, null);
+	} finally {
+	    executor.shutdownNow();
+	}
+    }
+}
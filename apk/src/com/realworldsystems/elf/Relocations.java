@@ -0,0 +1,180 @@
+/*
+ *  This file is part of the Realworld Systems ELF Reader Library (ELFRL).
+ *
+ *  ELFRL is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  ELFRL is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with ELFRL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.realworldsystems.elf;
+
+import java.util.ArrayList;
+
+/**
+ * A summary of the dynamic relocations of an ELF object
+ *
+ * Counts the relocations of the DT_REL, DT_RELA and DT_JMPREL tables by
+ * type, and tells whether the ELF object has text relocations. The total
+ * count is a measure for the work of the dynamic linker when loading.
+ *
+ * The Android linker before 5.0 only handles a few relocation types, and
+ * no RELA tables at all on ARM and x86. getUnsupportedTypes() lists the
+ * types it would reject, an ELF object with any of them fails to load.
+ *
+ * @author Sjoerd van Leent
+ */
+public class Relocations {
+
+    /**
+     * The relocation types handled by the linker on ARM: NONE, ABS32,
+     * REL32, COPY, GLOB_DAT, JUMP_SLOT and RELATIVE
+     */
+    private static final int[] ARM_TYPES = { 0, 2, 3, 20, 21, 22, 23 };
+
+    /**
+     * The relocation types handled by the linker on x86: NONE, 32, PC32,
+     * COPY, GLOB_DAT, JMP_SLOT and RELATIVE
+     */
+    private static final int[] X386_TYPES = { 0, 1, 2, 5, 6, 7, 8 };
+
+    /**
+     * The number of relocations by type, the type is the low byte of r_info
+     * on ELFCLASS32 and its low 32 bits on ELFCLASS64
+     */
+    private int[] counts = new int[256];
+
+    /**
+     * The number of entries in the DT_RELA tables
+     */
+    int rela = 0;
+
+    /**
+     * Set if DT_TEXTREL or DF_TEXTREL is present
+     */
+    boolean textRelocations = false;
+
+    /**
+     * The machine of the ELF object, see ELFHeader.Machine
+     */
+    int machine = 0;
+
+    Relocations() {}
+
+    /**
+     * Counts a relocation of the given type
+     */
+    void add(int type) { add(type, 1); }
+
+    /**
+     * Counts a number of relocations of the given type
+     *
+     * ELFCLASS64 types run into the thousands (AArch64), the counts grow
+     * with them. Types beyond 16 bits are counted as 0xffff.
+     */
+    void add(int type, int count) {
+	if(type < 0 || type > 0xffff) type = 0xffff;
+	if(type >= counts.length) {
+	    int[] grown = new int[Math.max(counts.length * 2, Integer.highestOneBit(type) * 2)];
+	    System.arraycopy(counts, 0, grown, 0, counts.length);
+	    counts = grown;
+	}
+	counts[type] += count;
+    }
+
+    /**
+     * Gets the total number of relocations
+     */
+    public int size() {
+	int size = 0;
+	for(int i = 0; i < counts.length; i++) size += counts[i];
+	return size;
+    }
+
+    /**
+     * Gets the number of relocations of the given type
+     */
+    public int getCount(int type) {
+	return type < 0 || type >= counts.length ? 0 : counts[type];
+    }
+
+    /**
+     * Gets the relocation types present, ascending
+     */
+    public int[] getTypes() {
+	ArrayList<Integer> types = new ArrayList<Integer>();
+	for(int i = 0; i < counts.length; i++) {
+	    if(counts[i] > 0) types.add(Integer.valueOf(i));
+	}
+	int[] array = new int[types.size()];
+	for(int i = 0; i < array.length; i++) array[i] = types.get(i).intValue();
+	return array;
+    }
+
+    /**
+     * Gets the number of relocations with an explicit addend
+     */
+    public int getRelaCount() { return rela; }
+
+    /**
+     * Tells whether relocations apply to a read-only segment
+     */
+    public boolean hasTextRelocations() { return textRelocations; }
+
+    /**
+     * Gets the machine of the ELF object, see ELFHeader.Machine
+     */
+    public int getMachine() { return machine; }
+
+    /**
+     * Gets the relocation types present which the linker does not handle
+     *
+     * @param machine The machine of the ELF object, see ELFHeader.Machine
+     * @return The unsupported types, ascending. Empty for unknown machines.
+     */
+    public int[] getUnsupportedTypes(int machine) {
+	int[] supported;
+	if(machine == ELFHeader.Machine.ARM) supported = ARM_TYPES;
+	else if(machine == ELFHeader.Machine.X386) supported = X386_TYPES;
+	else return new int[0];
+
+	ArrayList<Integer> unsupported = new ArrayList<Integer>();
+	int[] types = getTypes();
+	for(int i = 0; i < types.length; i++) {
+	    boolean found = false;
+	    for(int k = 0; k < supported.length && !found; k++) {
+		found = supported[k] == types[i];
+	    }
+	    if(!found) unsupported.add(Integer.valueOf(types[i]));
+	}
+	int[] array = new int[unsupported.size()];
+	for(int i = 0; i < array.length; i++) array[i] = unsupported.get(i).intValue();
+	return array;
+    }
+
+    /**
+     * Tells whether the linker is expected to load the ELF object
+     *
+     * @param machine The machine of the ELF object, see ELFHeader.Machine
+     */
+    public boolean isLoadable(int machine) {
+	if(rela > 0 && (machine == ELFHeader.Machine.ARM || machine == ELFHeader.Machine.X386)) {
+	    return false;
+	}
+	return getUnsupportedTypes(machine).length == 0;
+    }
+
+    /**
+     * Tells whether the linker is expected to load the ELF object on its
+     * own machine
+     */
+    public boolean isLoadable() { return isLoadable(machine); }
+}
@@ -0,0 +1,345 @@
+/*
+ *  This file is part of the Realworld Systems ELF Reader Library (ELFRL).
+ *
+ *  ELFRL is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  ELFRL is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with ELFRL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.realworldsystems.elf;
+
+import java.util.HashMap;
+
+/**
+ * An instance of this object in a Reader instance represents the section header
+ *
+ * Sections can be looked up by name (.dynsym, .gnu.hash, ...), the name
+ * index is built on the first lookup. The contents of a section are
+ * obtained through Reader.getSectionData().
+ *
+ * @author Sjoerd van Leent
+ */
+public class SectionHeader {
+
+    /**
+     * The section header contains entries in an array
+     */
+    public static class Entry {
+	Entry() {};
+
+	/**
+	 * The offset of the name in the section header string table
+	 */
+	int nameOffset;
+
+	/**
+	 * The name of the entry, empty if there is no string table
+	 */
+	String name = "";
+
+	/**
+	 * The type of the entry
+	 */
+	int type;
+
+	/**
+	 * The flags of the entry
+	 */
+	int flags;
+
+	/**
+	 * The virtual address of the entry
+	 */
+	int addr;
+
+	/**
+	 * The offset of the entry
+	 */
+	int offset;
+
+	/**
+	 * The size of the entry
+	 */
+	int size;
+
+	/**
+	 * The index of the associated section
+	 */
+	int link;
+
+	/**
+	 * Extra information, depending on the type
+	 */
+	int info;
+
+	/**
+	 * The alignment of the entry
+	 */
+	int addralign;
+
+	/**
+	 * The size of the fixed size elements in the entry, if any
+	 */
+	int entsize;
+
+	/**
+	 * Gets the name of the entry
+	 *
+	 * @return The name of the entry, such as .dynsym
+	 */
+	public String getName() { return name; }
+
+	/**
+	 * Gets the type of the entry
+	 *
+	 * @return The type of the entry
+	 */
+	public int getType() { return type; }
+
+	/**
+	 * Gets the flags of the entry
+	 *
+	 * @return The flags of the entry
+	 */
+	public int getFlags() { return flags; }
+
+	/**
+	 * Gets the virtual address of the entry
+	 *
+	 * @return The virtual address of the entry, 0 if not loaded
+	 */
+	public int getAddr() { return addr; }
+
+	/**
+	 * Gets the offset of the entry
+	 *
+	 * @return The offset of the entry
+	 */
+	public int getOffset() { return offset; }
+
+	/**
+	 * Gets the size of the entry
+	 *
+	 * @return The size of the entry
+	 */
+	public int getSize() { return size; }
+
+	/**
+	 * Gets the index of the associated section
+	 *
+	 * For symbol tables, this is the string table of the symbol names,
+	 * for relocation tables the symbol table.
+	 *
+	 * @return The index of the associated section
+	 */
+	public int getLink() { return link; }
+
+	/**
+	 * Gets the extra information of the entry
+	 *
+	 * @return The extra information of the entry
+	 */
+	public int getInfo() { return info; }
+
+	/**
+	 * Gets the alignment of the entry
+	 *
+	 * @return The alignment of the entry
+	 */
+	public int getAddrAlign() { return addralign; }
+
+	/**
+	 * Gets the size of the fixed size elements in the entry
+	 *
+	 * @return The element size, 0 if the entry has no such elements
+	 */
+	public int getEntSize() { return entsize; }
+
+	/**
+	 * Known types of the section header's entry are defined here
+	 */
+	public static class Type {
+	    private Type() {};
+
+	    /**
+	     * This section is inactive
+	     */
+	    public static final int NULL = 0;
+
+	    /**
+	     * Contains information defined by the program
+	     */
+	    public static final int PROGBITS = 1;
+
+	    /**
+	     * Contains the full symbol table
+	     */
+	    public static final int SYMTAB = 2;
+
+	    /**
+	     * Contains a string table
+	     */
+	    public static final int STRTAB = 3;
+
+	    /**
+	     * Contains relocations with explicit addends
+	     */
+	    public static final int RELA = 4;
+
+	    /**
+	     * Contains a symbol hash table
+	     */
+	    public static final int HASH = 5;
+
+	    /**
+	     * Contains the dynamic table
+	     */
+	    public static final int DYNAMIC = 6;
+
+	    /**
+	     * Contains notes, such as the build id
+	     */
+	    public static final int NOTE = 7;
+
+	    /**
+	     * Occupies no space in the file
+	     */
+	    public static final int NOBITS = 8;
+
+	    /**
+	     * Contains relocations without explicit addends
+	     */
+	    public static final int REL = 9;
+
+	    /**
+	     * This is a reserved section
+	     */
+	    public static final int SHLIB = 10;
+
+	    /**
+	     * Contains the dynamic symbol table
+	     */
+	    public static final int DYNSYM = 11;
+
+	    /**
+	     * Contains an array of initialization functions
+	     */
+	    public static final int INIT_ARRAY = 14;
+
+	    /**
+	     * Contains an array of termination functions
+	     */
+	    public static final int FINI_ARRAY = 15;
+
+	    /**
+	     * Contains an array of pre-initialization functions
+	     */
+	    public static final int PREINIT_ARRAY = 16;
+
+	    /**
+	     * Contains a GNU style symbol hash table
+	     */
+	    public static final int GNU_HASH = 0x6ffffff6;
+
+	    /**
+	     * Contains the version definitions
+	     */
+	    public static final int GNU_VERDEF = 0x6ffffffd;
+
+	    /**
+	     * Contains the version requirements
+	     */
+	    public static final int GNU_VERNEED = 0x6ffffffe;
+
+	    /**
+	     * Contains the version of every dynamic symbol
+	     */
+	    public static final int GNU_VERSYM = 0x6fffffff;
+	}
+
+	public String getTypeName() {
+	    switch(type) {
+	    case Type.NULL: return "NULL";
+	    case Type.PROGBITS: return "PROGBITS";
+	    case Type.SYMTAB: return "SYMTAB";
+	    case Type.STRTAB: return "STRTAB";
+	    case Type.RELA: return "RELA";
+	    case Type.HASH: return "HASH";
+	    case Type.DYNAMIC: return "DYNAMIC";
+	    case Type.NOTE: return "NOTE";
+	    case Type.NOBITS: return "NOBITS";
+	    case Type.REL: return "REL";
+	    case Type.SHLIB: return "SHLIB";
+	    case Type.DYNSYM: return "DYNSYM";
+	    case Type.INIT_ARRAY: return "INIT_ARRAY";
+	    case Type.FINI_ARRAY: return "FINI_ARRAY";
+	    case Type.PREINIT_ARRAY: return "PREINIT_ARRAY";
+	    case Type.GNU_HASH: return "GNU_HASH";
+	    case Type.GNU_VERDEF: return "GNU_VERDEF";
+	    case Type.GNU_VERNEED: return "GNU_VERNEED";
+	    case Type.GNU_VERSYM: return "GNU_VERSYM";
+	    default: return String.format("(Unknown [0x%x])", type);
+	    }
+	}
+    }
+
+    private SectionHeader.Entry[] entries;
+
+    /**
+     * The entries by name, built on first lookup
+     */
+    private HashMap<String, SectionHeader.Entry> names = null;
+
+    SectionHeader(SectionHeader.Entry[] entries) {
+	this.entries = entries;
+    }
+
+    /**
+     * Gets all available entries
+     *
+     * @return Available entries
+     */
+    public SectionHeader.Entry[] getEntries() { return entries; }
+
+    /**
+     * Gets the size of available section header entries
+     *
+     * @return An integer representing the size of available entries
+     */
+    public int size() { return entries.length; }
+
+    /**
+     * Gets a specfic section header entry
+     *
+     * @param int Index into the section header entry table
+     * @return The section header
+     */
+    public SectionHeader.Entry getEntry(int ndx) { return entries[ndx]; }
+
+    /**
+     * Gets a section header entry by name
+     *
+     * If several sections share a name, the first one is returned.
+     *
+     * @param name The name of the section, such as .dynsym
+     * @return The section header, or null if there is no such section
+     */
+    public synchronized SectionHeader.Entry getEntry(String name) {
+	if(names == null) {
+	    names = new HashMap<String, SectionHeader.Entry>();
+	    for(int i = entries.length - 1; i >= 0; i--) {
+		names.put(entries[i].name, entries[i]);
+	    }
+	}
+	return names.get(name);
+    }
+}
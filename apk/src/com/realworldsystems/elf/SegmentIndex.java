@@ -0,0 +1,135 @@
+/*
+ *  This file is part of the Realworld Systems ELF Reader Library (ELFRL).
+ *
+ *  ELFRL is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  ELFRL is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with ELFRL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.realworldsystems.elf;
+
+/**
+ * Translates virtual addresses into file offsets
+ *
+ * The LOAD entries of a program header are kept sorted by virtual address,
+ * an address is translated by looking up its segment with a binary search.
+ * Only the part of a segment which is backed by the file can be translated,
+ * the zero filled remainder up to the memory size can not.
+ *
+ * @author Sjoerd van Leent
+ */
+class SegmentIndex {
+
+    /**
+     * The first virtual address of every segment, ascending
+     */
+    private long[] starts;
+
+    /**
+     * The number of bytes of every segment backed by the file
+     */
+    private long[] sizes;
+
+    /**
+     * The file offset of every segment
+     */
+    private long[] offsets;
+
+    /**
+     * Builds the index of the LOAD entries of a program header
+     */
+    SegmentIndex(ProgramHeader header) {
+	int count = 0;
+	for(int i = 0; i < header.size(); i++) {
+	    if(header.getEntry(i).getType() == ProgramHeader.Entry.Type.LOAD) count++;
+	}
+	starts = new long[count];
+	sizes = new long[count];
+	offsets = new long[count];
+	int k = 0;
+	for(int i = 0; i < header.size(); i++) {
+	    ProgramHeader.Entry entry = header.getEntry(i);
+	    if(entry.getType() != ProgramHeader.Entry.Type.LOAD) continue;
+	    starts[k] = entry.getVAddr() & 0xFFFFFFFFL;
+	    sizes[k] = entry.getFileSZ() & 0xFFFFFFFFL;
+	    offsets[k] = entry.getOffset() & 0xFFFFFFFFL;
+	    k++;
+	}
+	sort();
+    }
+
+    /**
+     * Builds the index of the given segments
+     *
+     * The arrays are taken over and sorted in place.
+     *
+     * @param starts The first virtual address of every segment
+     * @param sizes The number of bytes of every segment backed by the file
+     * @param offsets The file offset of every segment
+     */
+    SegmentIndex(long[] starts, long[] sizes, long[] offsets) {
+	this.starts = starts;
+	this.sizes = sizes;
+	this.offsets = offsets;
+	sort();
+    }
+
+    /**
+     * Sorts the segments by virtual address, there are only a few
+     */
+    private void sort() {
+	for(int i = 1; i < starts.length; i++) {
+	    long start = starts[i], size = sizes[i], offset = offsets[i];
+	    int k = i - 1;
+	    while(k >= 0 && starts[k] > start) {
+		starts[k + 1] = starts[k];
+		sizes[k + 1] = sizes[k];
+		offsets[k + 1] = offsets[k];
+		k--;
+	    }
+	    starts[k + 1] = start;
+	    sizes[k + 1] = size;
+	    offsets[k + 1] = offset;
+	}
+    }
+
+    /**
+     * Gets the number of indexed segments
+     */
+    int size() { return starts.length; }
+
+    /**
+     * Translates a virtual address into a file offset
+     *
+     * @param vaddr The virtual address
+     *
+     * @return The file offset, or -1 if the address is not backed by the file
+     */
+    long toFileOffset(long vaddr) {
+	int low = 0;
+	int high = starts.length - 1;
+	int found = -1;
+
+	// Find the last segment starting at or before the address
+	while(low <= high) {
+	    int mid = (low + high) >>> 1;
+	    if(starts[mid] <= vaddr) {
+		found = mid;
+		low = mid + 1;
+	    } else {
+		high = mid - 1;
+	    }
+	}
+	if(found < 0 || vaddr - starts[found] >= sizes[found]) return -1;
+	return offsets[found] + (vaddr - starts[found]);
+    }
+}
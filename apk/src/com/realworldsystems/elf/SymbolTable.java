@@ -0,0 +1,412 @@
+/*
+ *  This file is part of the Realworld Systems ELF Reader Library (ELFRL).
+ *
+ *  ELFRL is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  ELFRL is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with ELFRL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.realworldsystems.elf;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+
+/**
+ * The dynamic symbol table of an ELF object
+ *
+ * Symbols are looked up through the hash tables of the ELF object itself,
+ * the GNU hash table (including its bloom filter) if present, the SysV
+ * hash table otherwise, so a lookup costs a few probes instead of a scan
+ * of the whole table. Symbols are decoded from the mapped ELF object on
+ * demand.
+ *
+ * @author Sjoerd van Leent
+ */
+public class SymbolTable {
+
+    /**
+     * A dynamic symbol
+     */
+    public static class Symbol {
+	Symbol() {};
+
+	String name;
+	int value;
+	int size;
+	int info;
+	int other;
+	int shndx;
+
+	/**
+	 * Gets the name of the symbol
+	 */
+	public String getName() { return name; }
+
+	/**
+	 * Gets the value of the symbol, usually its virtual address
+	 */
+	public int getValue() { return value; }
+
+	/**
+	 * Gets the size of the symbol
+	 */
+	public int getSize() { return size; }
+
+	/**
+	 * Gets the binding of the symbol, one of the values in Binding
+	 */
+	public int getBinding() { return info >>> 4; }
+
+	/**
+	 * Gets the type of the symbol, one of the values in Type
+	 */
+	public int getType() { return info & 0xf; }
+
+	/**
+	 * Gets the visibility of the symbol, one of the values in Visibility
+	 */
+	public int getVisibility() { return other & 0x3; }
+
+	/**
+	 * Gets the index of the section the symbol is defined in
+	 */
+	public int getSectionIndex() { return shndx; }
+
+	/**
+	 * Tells whether the symbol is defined by the ELF object
+	 */
+	public boolean isDefined() { return shndx != 0; }
+
+	/**
+	 * Tells whether the symbol is defined and visible to other ELF objects
+	 */
+	public boolean isExported() {
+	    int binding = getBinding();
+	    int visibility = getVisibility();
+	    return isDefined() &&
+		(binding == Binding.GLOBAL || binding == Binding.WEAK) &&
+		(visibility == Visibility.DEFAULT || visibility == Visibility.PROTECTED);
+	}
+
+	/**
+	 * Known bindings of a symbol are defined here
+	 */
+	public static class Binding {
+	    private Binding() {};
+
+	    /**
+	     * Not visible outside the ELF object
+	     */
+	    public static final int LOCAL = 0;
+
+	    /**
+	     * Visible to all ELF objects
+	     */
+	    public static final int GLOBAL = 1;
+
+	    /**
+	     * Visible to all ELF objects, with a lower precedence
+	     */
+	    public static final int WEAK = 2;
+	}
+
+	/**
+	 * Known types of a symbol are defined here
+	 */
+	public static class Type {
+	    private Type() {};
+
+	    public static final int NOTYPE = 0;
+	    public static final int OBJECT = 1;
+	    public static final int FUNC = 2;
+	    public static final int SECTION = 3;
+	    public static final int FILE = 4;
+	    public static final int TLS = 6;
+	}
+
+	/**
+	 * Known visibilities of a symbol are defined here
+	 */
+	public static class Visibility {
+	    private Visibility() {};
+
+	    public static final int DEFAULT = 0;
+	    public static final int INTERNAL = 1;
+	    public static final int HIDDEN = 2;
+	    public static final int PROTECTED = 3;
+	}
+    }
+
+    /**
+     * The layout of the symbol table entries and the GNU bloom filter
+     */
+    private Layout layout;
+
+    private ByteBuffer image;
+    private int symtab;
+    private int strtab;
+    private int strsz;
+
+    /**
+     * The file offset of the SysV hash table, or -1
+     */
+    private int hash = -1;
+
+    /**
+     * The file offset of the GNU hash table, or -1
+     */
+    private int gnuHash = -1;
+
+    // Decoded GNU hash table header
+    private int gnuBuckets;
+    private int gnuSymOffset;
+    private int gnuBloomSize;
+    private int gnuBloomShift;
+
+    /**
+     * The number of symbols, computed on first use
+     */
+    private int count = -1;
+
+    /**
+     * Constructs a symbol table
+     *
+     * @param layout The layout of the ELF class
+     * @param image The mapped ELF object
+     * @param symtab The file offset of the symbol table
+     * @param strtab The file offset of the string table
+     * @param strsz The size of the string table
+     * @param hash The file offset of the SysV hash table, or -1
+     * @param gnuHash The file offset of the GNU hash table, or -1
+     */
+    SymbolTable(Layout layout, ByteBuffer image, int symtab, int strtab, int strsz,
+		int hash, int gnuHash) throws ReaderException {
+	this.layout = layout;
+	this.image = image;
+	this.symtab = symtab;
+	this.strtab = strtab;
+	this.strsz = strsz;
+	this.hash = hash;
+	this.gnuHash = gnuHash;
+	if(gnuHash >= 0) {
+	    check(gnuHash, 16);
+	    gnuBuckets = image.getInt(gnuHash);
+	    gnuSymOffset = image.getInt(gnuHash + 4);
+	    gnuBloomSize = image.getInt(gnuHash + 8);
+	    gnuBloomShift = image.getInt(gnuHash + 12);
+	    if(gnuBuckets < 0 || gnuBloomSize < 0) {
+		throw new ReaderException("Invalid GNU hash table");
+	    }
+	    check(gnuHash + 16, (long)gnuBloomSize * layout.wordSize + (long)gnuBuckets * 4);
+	}
+	if(hash >= 0) check(hash, 8);
+    }
+
+    private void check(long offset, long size) throws ReaderException {
+	if(offset < 0 || offset + size > image.limit()) {
+	    throw new ReaderException("Symbol table data outside of the ELF object");
+	}
+    }
+
+    /**
+     * Computes the SysV hash of a symbol name
+     */
+    static int sysvHash(byte[] name) {
+	int h = 0;
+	for(int i = 0; i < name.length; i++) {
+	    h = (h << 4) + (name[i] & 0xff);
+	    int g = h & 0xf0000000;
+	    if(g != 0) h ^= g >>> 24;
+	    h &= ~g;
+	}
+	return h;
+    }
+
+    /**
+     * Computes the GNU hash of a symbol name
+     */
+    static int gnuHash(byte[] name) {
+	int h = 5381;
+	for(int i = 0; i < name.length; i++) {
+	    h = h * 33 + (name[i] & 0xff);
+	}
+	return h;
+    }
+
+    /**
+     * Gets the number of symbols in the table, including the null symbol
+     */
+    public synchronized int size() {
+	if(count >= 0) return count;
+	if(hash >= 0) {
+	    // The chain has an entry for every symbol
+	    count = image.getInt(hash + 4);
+	} else if(gnuHash >= 0) {
+	    // Follow the chain of the highest bucket to its end
+	    int buckets = gnuHash + 16 + gnuBloomSize * layout.wordSize;
+	    int chain = buckets + gnuBuckets * 4;
+	    int last = 0;
+	    for(int i = 0; i < gnuBuckets; i++) {
+		last = Math.max(last, image.getInt(buckets + i * 4));
+	    }
+	    if(last < gnuSymOffset) {
+		count = gnuSymOffset;
+	    } else {
+		while(chain + (last - gnuSymOffset) * 4 + 4 <= image.limit() &&
+		      (image.getInt(chain + (last - gnuSymOffset) * 4) & 1) == 0) {
+		    last++;
+		}
+		count = last + 1;
+	    }
+	} else {
+	    // Without hash table, the string table follows the symbol table
+	    count = strtab > symtab ? (strtab - symtab) / layout.symentSize : 0;
+	}
+	return count;
+    }
+
+    /**
+     * Gets a symbol by its index
+     *
+     * @throws ReaderException if the symbol is outside of the ELF object
+     */
+    public Symbol getSymbol(int index) throws ReaderException {
+	int offset = symtab + index * layout.symentSize;
+	check(offset, layout.symentSize);
+	Symbol symbol = new Symbol();
+	int name = image.getInt(offset);
+	symbol.value = layout.readInt(image, offset + layout.stValue);
+	symbol.size = layout.readInt(image, offset + layout.stSize);
+	symbol.info = image.get(offset + layout.stInfo) & 0xff;
+	symbol.other = image.get(offset + layout.stOther) & 0xff;
+	symbol.shndx = image.getShort(offset + layout.stShNdx) & 0xffff;
+	if(strsz > 0 && (name < 0 || name >= strsz)) {
+	    throw new ReaderException("Symbol name outside of the string table");
+	}
+	symbol.name = Reader.readString(image, strtab + name);
+	return symbol;
+    }
+
+    /**
+     * Tells whether the symbol at the given index has the given name,
+     * without decoding its name
+     */
+    private boolean nameEquals(int index, byte[] name) {
+	int offset = symtab + index * layout.symentSize;
+	if(offset < 0 || offset + layout.symentSize > image.limit()) return false;
+	int str = strtab + image.getInt(offset);
+	if(str < 0 || str + name.length >= image.limit()) return false;
+	for(int i = 0; i < name.length; i++) {
+	    if(image.get(str + i) != name[i]) return false;
+	}
+	return image.get(str + name.length) == 0;
+    }
+
+    private int lookupGnu(byte[] name) {
+	int h = gnuHash(name);
+
+	// The bloom filter rules out most absent names without touching the buckets
+	int bloom = gnuHash + 16;
+	if(gnuBloomSize > 0) {
+	    // The bloom words have the size of an address
+	    int bits = layout.wordSize * 8;
+	    int offset = bloom + (int)(((h & 0xFFFFFFFFL) / bits) % gnuBloomSize) * layout.wordSize;
+	    long word = layout.readWord(image, offset);
+	    long mask = (1L << ((h & 0xFFFFFFFFL) % bits)) | (1L << ((h >>> gnuBloomShift) % bits));
+	    if((word & mask) != mask) return -1;
+	}
+
+	if(gnuBuckets == 0) return -1;
+	int buckets = bloom + gnuBloomSize * layout.wordSize;
+	int chain = buckets + gnuBuckets * 4;
+	int index = image.getInt(buckets + (int)((h & 0xFFFFFFFFL) % gnuBuckets) * 4);
+	if(index < gnuSymOffset) return -1;
+	while(true) {
+	    int offset = chain + (index - gnuSymOffset) * 4;
+	    if(offset < 0 || offset + 4 > image.limit()) return -1;
+	    int value = image.getInt(offset);
+	    if((value | 1) == (h | 1) && nameEquals(index, name)) return index;
+	    if((value & 1) != 0) return -1;
+	    index++;
+	}
+    }
+
+    private int lookupSysv(byte[] name) {
+	int nbucket = image.getInt(hash);
+	int nchain = image.getInt(hash + 4);
+	if(nbucket <= 0) return -1;
+	int buckets = hash + 8;
+	int chain = buckets + nbucket * 4;
+	int h = sysvHash(name);
+	int index = image.getInt(buckets + (int)((h & 0xFFFFFFFFL) % nbucket) * 4);
+	// The chain length bounds the walk on corrupt tables
+	for(int steps = 0; index != 0 && steps < nchain; steps++) {
+	    if(index < 0 || index >= nchain || chain + index * 4 + 4 > image.limit()) return -1;
+	    if(nameEquals(index, name)) return index;
+	    index = image.getInt(chain + index * 4);
+	}
+	return -1;
+    }
+
+    /**
+     * Looks up a symbol by name
+     *
+     * Undefined symbols are left out of a GNU hash table, they are only
+     * found if the ELF object has a SysV hash table only. Use getSymbols()
+     * to list the undefined symbols.
+     *
+     * @param name The name of the symbol
+     * @return The symbol, or null if the table has no symbol of that name
+     */
+    public Symbol lookup(String name) throws ReaderException {
+	byte[] bytes;
+	try {
+	    bytes = name.getBytes("US-ASCII");
+	} catch (UnsupportedEncodingException ex) {
+	    throw new ReaderException("Could not encode symbol name", ex);
+	}
+
+	int index = -1;
+	if(gnuHash >= 0) {
+	    index = lookupGnu(bytes);
+	} else if(hash >= 0) {
+	    index = lookupSysv(bytes);
+	} else {
+	    for(int i = 1; i < size() && index < 0; i++) {
+		if(nameEquals(i, bytes)) index = i;
+	    }
+	}
+	return index < 0 ? null : getSymbol(index);
+    }
+
+    /**
+     * Tells whether a symbol is exported by the ELF object
+     *
+     * @param name The name of the symbol
+     */
+    public boolean isExported(String name) throws ReaderException {
+	Symbol symbol = lookup(name);
+	return symbol != null && symbol.isExported();
+    }
+
+    /**
+     * Gets all symbols, excluding the null symbol
+     */
+    public Symbol[] getSymbols() throws ReaderException {
+	int n = size();
+	Symbol[] symbols = new Symbol[Math.max(0, n - 1)];
+	for(int i = 1; i < n; i++) {
+	    symbols[i - 1] = getSymbol(i);
+	}
+	return symbols;
+    }
+}
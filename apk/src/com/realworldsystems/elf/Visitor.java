@@ -0,0 +1,70 @@
+/*
+ *  This file is part of the Realworld Systems ELF Reader Library (ELFRL).
+ *
+ *  ELFRL is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  ELFRL is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with ELFRL.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.realworldsystems.elf;
+
+/**
+ * Receives the program header and dynamic table entries of an ELF object
+ *
+ * Passed to Reader.accept(), which calls onProgramHeader() for every
+ * program header entry in order. The entries of a dynamic table are
+ * passed to onDynamic() right after the DYNAMIC entry holding them, and
+ * a NEEDED, SONAME or RPATH entry is also passed to onName() with the id
+ * of its name in Names. No objects are created per entry.
+ *
+ * Extend Visitor.Adapter to implement only some of the callbacks.
+ *
+ * @author Sjoerd van Leent
+ */
+public interface Visitor {
+
+    /**
+     * Called for every program header entry
+     *
+     * The arguments are the fields of ProgramHeader.Entry.
+     */
+    void onProgramHeader(int type, int offset, int vaddr, int paddr,
+			 int filesz, int memsz, int flags, int align);
+
+    /**
+     * Called for every dynamic table entry
+     *
+     * @param tag The tag, see Dynamic.DT.Tag
+     * @param value The pointer or the value of the entry, as Dynamic.DT
+     *              holds it. 0 for tags with neither.
+     */
+    void onDynamic(int tag, int value);
+
+    /**
+     * Called for every dynamic table entry pointing into the string table,
+     * after onDynamic()
+     *
+     * @param tag The tag, NEEDED, SONAME or RPATH
+     * @param nameId The id of the name in Names
+     */
+    void onName(int tag, int nameId);
+
+    /**
+     * A visitor which ignores everything
+     */
+    public static class Adapter implements Visitor {
+	public void onProgramHeader(int type, int offset, int vaddr, int paddr,
+				    int filesz, int memsz, int flags, int align) {}
+	public void onDynamic(int tag, int value) {}
+	public void onName(int tag, int nameId) {}
+    }
+}
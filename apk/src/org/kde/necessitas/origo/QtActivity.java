@@ -27,12 +27,16 @@
 
 package org.kde.necessitas.origo;
 
+import com.realworldsystems.android.lib.BundledLibraries;
 import com.realworldsystems.android.lib.FinderDir;
 import com.realworldsystems.android.lib.FinderException;
+import com.realworldsystems.android.lib.LevelLoader;
+import com.realworldsystems.android.lib.LoadPlan;
+import com.realworldsystems.android.lib.Prefetcher;
+import com.realworldsystems.elf.Cache;
 
 import java.io.File;
 import java.lang.reflect.Method;
-import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -47,15 +51,20 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.ServiceConnection;
+import android.content.SharedPreferences;
 import android.content.pm.ActivityInfo;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.content.res.Configuration;
+import android.content.res.Resources;
 import android.content.res.Resources.Theme;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
 import android.os.IBinder;
 import android.os.RemoteException;
 import android.util.AttributeSet;
@@ -94,6 +103,10 @@ public class QtActivity extends Activity
     private static final String ENVIRONMENT_VARIABLES_KEY="environment.variables";
     private static final String APPLICATION_PARAMETERS_KEY="application.parameters";
     private static final String BUNDLED_LIBRARIES_KEY="bundled.libraries";
+    private static final String LOADER_PARAMS_PREFERENCES="loader.params"; // Ministro loader params of the previous launch
+    private static final String LOADER_PARAMS_SIGNATURE_KEY="signature";
+    private static final String[] LOADER_PARAMS_STRING_KEYS={ DEX_PATH_KEY, LIB_PATH_KEY, LOADER_CLASS_NAME_KEY, ENVIRONMENT_VARIABLES_KEY, APPLICATION_PARAMETERS_KEY };
+    private static final String MINISTRO_PACKAGE="org.kde.necessitas.ministro";
 
     /// Ministro server parameter keys
     private static final String REQUIRED_MODULES_KEY="required.modules";
@@ -106,8 +119,121 @@ public class QtActivity extends Activity
     private ActivityInfo m_activityInfo = null; // activity info object, used to access the libs and the strings
     private DexClassLoader m_classLoader = null; // loader object
     private String[] m_qtLibs = null; // required qt libs
+    private boolean m_refreshLoaderParams = false; // started with cached loader params, Ministro refreshes them afterwards
+    private Handler m_handler = new Handler(); // posts to the UI thread
+    private long m_ministroStart = 0; // when Ministro was bound, in ns
+    private boolean m_ministroTimedOut = false; // started on fallback Qt libraries, Ministro's answer is ignored
+
+    // returns the main library followed by the root libraries, or null to load every bundled library
+    private static String[] getRootLibraries(Resources resources, ActivityInfo activityInfo)
+    {
+        if (activityInfo == null || !activityInfo.metaData.containsKey("android.app.root_libs_resource_id"))
+            return null;
+        ArrayList<String> roots = new ArrayList<String>();
+        if (activityInfo.metaData.containsKey("android.app.lib_name"))
+            roots.add(activityInfo.metaData.getString("android.app.lib_name"));
+        roots.addAll(Arrays.asList(resources.getStringArray(activityInfo.metaData.getInt("android.app.root_libs_resource_id"))));
+        return roots.toArray(new String[roots.size()]);
+    }
+
+    // returns the library order precomputed at build time, or null if it is missing or
+    // doesn't match the installed libraries
+    private static String[] getBundledLibraries(Resources resources, ActivityInfo activityInfo, String libDir, String[] roots)
+    {
+        if (activityInfo == null || !activityInfo.metaData.containsKey("android.app.bundled_libs_resource_id"))
+            return null;
+        String[] libs = resources.getStringArray(activityInfo.metaData.getInt("android.app.bundled_libs_resource_id"));
+        String signature = activityInfo.metaData.getString("android.app.bundled_libs_signature");
+        if (libs.length == 0 || signature == null || signature.length() == 0)
+            return null;
+        try {
+            if (signature.equals(BundledLibraries.getSignature(libDir, roots)))
+                return libs;
+            Log.i(QtApplication.QtTAG, "Bundled library order is stale, scanning " + libDir);
+        } catch (FinderException e) {
+            Log.w(QtApplication.QtTAG, "Can't check the bundled library order", e);
+        }
+        return null;
+    }
+
+    // returns the directory the bundled libraries are installed in
+    static String getLibraryDirectory(Context context)
+    {
+        return String.format("%s%c%s", context.getApplicationInfo().dataDir, File.separatorChar, "lib");
+    }
+
+    // resolves the load order of the bundled libraries, as file names. Only depends on the
+    // installed libraries, QtApplication starts it speculatively as soon as the process starts.
+    static String[] resolveBundledLibraries(Context context, ActivityInfo activityInfo) throws FinderException
+    {
+        String libDir = getLibraryDirectory(context);
+        String[] roots = getRootLibraries(context.getResources(), activityInfo);
+        String[] deps = getBundledLibraries(context.getResources(), activityInfo, libDir, roots);
+        if (deps == null) {
+            // Parse the libraries on all available processors (0), using
+            // the ELF cache of the previous launches
+            FinderDir fd = new FinderDir(libDir, 0);
+            fd.setCache(QtApplication.getElfCache(context));
+            fd.setRoots(roots);
+            // Leave out libraries which don't load well (relocation problems)
+            fd.setExcludeUnloadable(true);
+            deps = fd.getOrderedDependencies();
+            QtApplication.saveElfCache(context);
+        }
+        return deps;
+    }
+
+    // loads the Qt and bundled libraries ahead of QtLoader and removes them from the loader params,
+    // the bundled libraries level by level on the given number of threads (0 = all processors,
+    // 1 = serially). Qt plugins and the main library are left to QtLoader, their JNI_OnLoad
+    // needs its class loader. With android.app.prefetch_window set the bundled libraries are
+    // read into the page cache that many libraries ahead of the loader.
+    private void preloadLibraries(Bundle loaderParams, String libDir, int threads) throws Exception
+    {
+        long start = System.nanoTime();
+        ArrayList<String> qtLibs = loaderParams.getStringArrayList(NATIVE_LIBRARIES_KEY);
+        ArrayList<String> remainingQtLibs = new ArrayList<String>();
+        if (qtLibs != null)
+            for (String lib: qtLibs)
+            {
+                if (lib.contains("/plugins/"))
+                    remainingQtLibs.add(lib);
+                else
+                    System.load(lib);
+            }
+        loaderParams.putStringArrayList(NATIVE_LIBRARIES_KEY, remainingQtLibs);
+        Log.i(QtApplication.QtTAG, String.format("Preloaded Qt libraries in %.1f ms", (System.nanoTime() - start) / 1e6));
+
+        String mainLib = m_activityInfo.metaData.getString("android.app.lib_name");
+        ArrayList<String> preload = new ArrayList<String>();
+        ArrayList<String> remainingLibs = new ArrayList<String>();
+        for (String lib: loaderParams.getStringArrayList(BUNDLED_LIBRARIES_KEY))
+        {
+            if (lib.equals(mainLib))
+                remainingLibs.add(lib);
+            else
+                preload.add(lib);
+        }
+        String[] preloadLibs = preload.toArray(new String[preload.size()]);
+        Cache cache = QtApplication.getElfCache(this);
+        LevelLoader loader = new LevelLoader(libDir, preloadLibs);
+        loader.setCache(cache);
+        loader.setThreads(threads);
+        int window = m_activityInfo.metaData.getInt("android.app.prefetch_window", 0);
+        if (window > 0)
+        {
+            Prefetcher prefetcher = new Prefetcher(libDir, preloadLibs, window);
+            prefetcher.setCache(cache);
+            loader.setPrefetcher(prefetcher);
+        }
+        loader.load();
+        QtApplication.saveElfCache(this);
+        loaderParams.putStringArrayList(BUNDLED_LIBRARIES_KEY, remainingLibs);
+        Log.i(QtApplication.QtTAG, "Preloaded bundled libraries\n" + loader.getReport());
+    }
 
-    // this function is used to load and start the loader
+    // this function is used to load and start the loader, the libraries are resolved and
+    // loaded on a background thread while the splash screen stays up
     private void loadApplication(Bundle loaderParams)
     {
         try
@@ -126,78 +252,341 @@ public class QtActivity extends Activity
                 return;
             }
 
-            m_classLoader = new DexClassLoader(loaderParams.getString(DEX_PATH_KEY) // .jar/.apk files
-                                            , getDir("outdex", Context.MODE_PRIVATE).getAbsolutePath() // directory where optimized DEX files should be written.
-                                            , loaderParams.containsKey(LIB_PATH_KEY)?loaderParams.getString(LIB_PATH_KEY):null // libs folder (if exists)
-                                            , getClassLoader()); // parent loader
+            new LoadTask().execute(loaderParams);
+        } catch (Exception e) {
+            showFatalError(e);
+        }
+    }
 
+    // resolves and loads the libraries off the UI thread, then starts QtLoader on it
+    private class LoadTask extends AsyncTask<Bundle, Void, Object>
+    {
+        private Bundle m_loaderParams = null;
+        private Exception m_error = null;
+        private long m_start = System.nanoTime();
 
-	    // add all bundled libs to loader params
-            ArrayList<String> libs = new ArrayList<String>();
-	    {
-		Context	ctx	= this.getApplication().getApplicationContext();
-		String	dataDir = ctx.getApplicationInfo().dataDir;
-
-		Class		finderDirClass = m_classLoader.loadClass("com.realworldsystems.android.lib.FinderDir");
-		Constructor	ctor	       = finderDirClass.getConstructor(String.class);
-		
-
-		Object	fd    = ctor.newInstance(String.format("%s%c%s", 
-							   dataDir, 
-							   File.separatorChar,
-							   "lib"));
-		Method	mthd  = finderDirClass.getMethod("getOrderedDependencies");
-		String[] deps = (String[])mthd.invoke(fd);
-
-		// These libraries don't load well (relocation problems)
-		String[]        rem     = {"gsl"};
-
-		for(String dep:deps) {
-		    // String lib... and ...so
-		    String	cut	 = dep.substring(3, dep.length()-3);
-		    boolean	dontload = false;
-		    for(String r:rem) { if(r.equals(cut)) { dontload = true; }}
-		    if(!dontload) { libs.add(cut); }
-		}
+        @Override
+        protected Object doInBackground(Bundle... params)
+        {
+            m_loaderParams = params[0];
+            try {
+                return prepareLoader(m_loaderParams);
+            } catch (Exception e) {
+                m_error = e;
+                return null;
+            }
+        }
+
+        // completion callback, on the UI thread
+        @Override
+        protected void onPostExecute(Object qtLoader)
+        {
+            Log.i(QtApplication.QtTAG, String.format("Prepared the application in %.1f ms", (System.nanoTime() - m_start) / 1e6));
+            if (isFinishing())
+                return;
+            try {
+                if (m_error != null)
+                    throw m_error;
+                startLoader(qtLoader, m_loaderParams);
+            } catch (Exception e) {
+                // the cached loader params may be the cause, ask Ministro next time
+                if (m_refreshLoaderParams)
+                    clearLoaderParams();
+                showFatalError(e);
+                return;
+            }
+            if (m_refreshLoaderParams)
+                refreshLoaderParams();
+        }
+    }
+
+    // creates the class loader, resolves and optionally preloads the libraries and creates
+    // the QtLoader instance. Runs on a background thread.
+    private Object prepareLoader(Bundle loaderParams) throws Exception
+    {
+        m_classLoader = new DexClassLoader(loaderParams.getString(DEX_PATH_KEY) // .jar/.apk files
+                                        , getDir("outdex", Context.MODE_PRIVATE).getAbsolutePath() // directory where optimized DEX files should be written.
+                                        , loaderParams.containsKey(LIB_PATH_KEY)?loaderParams.getString(LIB_PATH_KEY):null // libs folder (if exists)
+                                        , getClassLoader()); // parent loader
+
+
+	// add all bundled libs to loader params, the order is resolved by QtApplication
+        ArrayList<String> libs = new ArrayList<String>();
+	String	libDir	= getLibraryDirectory(this);
+	{
+	    String[]	deps  = QtApplication.getBundledLibraries(this);
+	    Cache	cache = QtApplication.getElfCache(this);
+
+	    // merge them with the Qt libraries into one plan, Qt libraries which are
+	    // bundled as well are loaded once
+	    LoadPlan plan = new LoadPlan(libDir, loaderParams.getStringArrayList(NATIVE_LIBRARIES_KEY), deps);
+	    plan.setCache(cache);
+	    loaderParams.putStringArrayList(NATIVE_LIBRARIES_KEY, plan.getNativeLibraries());
+	    QtApplication.saveElfCache(this);
+	    if (!plan.getDuplicates().isEmpty())
+		Log.i(QtApplication.QtTAG, "Loaded by SONAME already: " + plan.getDuplicates());
+
+	    for(String dep:plan.getBundledLibraries()) {
+		// String lib... and ...so
+		libs.add(dep.substring(3, dep.length()-3));
 	    }
+	}
 	    
-            loaderParams.putStringArrayList(BUNDLED_LIBRARIES_KEY, libs);
+        loaderParams.putStringArrayList(BUNDLED_LIBRARIES_KEY, libs);
+
+        // optionally load the libraries level by level ahead of QtLoader
+        if (m_activityInfo != null && m_activityInfo.metaData.containsKey("android.app.preload_threads"))
+            preloadLibraries(loaderParams, libDir, m_activityInfo.metaData.getInt("android.app.preload_threads"));
+
+        // load QtLoader class
+
+        @SuppressWarnings("rawtypes")
+        Class loaderClass = m_classLoader.loadClass(loaderParams.getString(LOADER_CLASS_NAME_KEY)); // load QtLoader class
+        return loaderClass.newInstance(); // create an instance
+    }
+
+    // starts QtLoader, on the UI thread
+    private void startLoader(Object qtLoader, Bundle loaderParams) throws Exception
+    {
+        Method perpareAppMethod=qtLoader.getClass().getMethod("loadApplication", Activity.class, ClassLoader.class, Bundle.class);
+        if (!(Boolean)perpareAppMethod.invoke(qtLoader, this, m_classLoader, loaderParams))
+            throw new Exception("");
+
+        QtApplication.setQtActivityDelegate(qtLoader);
+
+        Method startAppMethod=qtLoader.getClass().getMethod("startApplication");
+        if (!(Boolean)startAppMethod.invoke(qtLoader))
+            throw new Exception("");
+    }
+
+    private void showFatalError(Exception e)
+    {
+        e.printStackTrace();
+        AlertDialog errorDialog = new AlertDialog.Builder(QtActivity.this).create();
+        if (m_activityInfo != null && m_activityInfo.metaData.containsKey("android.app.fatal_error_msg")) {
+            errorDialog.setMessage(m_activityInfo.metaData.getString("android.app.fatal_error_msg"));
+	} else if (e instanceof FinderException) {
+            errorDialog.setMessage(String.format("%s\n%s", "Fatal error: ", e.getMessage()));
+	} else {
+            errorDialog.setMessage("Fatal error, your application can't be started.");
+	}
+        errorDialog.setButton(getResources().getString(android.R.string.ok), new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                finish();
+            }
+        });
+        errorDialog.show();
+    }
+
+    // returns a signature of everything the Ministro loader params depend upon: the required
+    // modules, the application and Ministro packages and the Qt libraries and jars. Null if
+    // a library or jar is missing.
+    private String getLoaderParamsSignature(Bundle loaderParams) throws NameNotFoundException
+    {
+        StringBuilder signature = new StringBuilder();
+        signature.append(QT_VERSION).append(':').append(MINISTRO_API_LEVEL);
+        if (m_qtLibs != null)
+            for (String lib : m_qtLibs)
+                signature.append(':').append(lib);
+        signature.append(':').append(getPackageSignature(getPackageName()));
+        signature.append(':').append(getPackageSignature(MINISTRO_PACKAGE));
+
+        ArrayList<String> files = new ArrayList<String>();
+        if (loaderParams.getStringArrayList(NATIVE_LIBRARIES_KEY) != null)
+            files.addAll(loaderParams.getStringArrayList(NATIVE_LIBRARIES_KEY));
+        if (loaderParams.getString(DEX_PATH_KEY) != null)
+            for (String jar : loaderParams.getString(DEX_PATH_KEY).split(System.getProperty("path.separator", ":")))
+                if (jar.length() > 0)
+                    files.add(jar);
+        for (String file : files)
+        {
+            File f = new File(file);
+            if (!f.exists())
+                return null;
+            signature.append(':').append(f.length()).append('@').append(f.lastModified());
+        }
+        return signature.toString();
+    }
 
-            // load and start QtLoader class
+    // returns the version and install time of a package
+    private String getPackageSignature(String packageName) throws NameNotFoundException
+    {
+        PackageInfo info = getPackageManager().getPackageInfo(packageName, 0);
+        return info.versionCode + "@" + new File(info.applicationInfo.sourceDir).lastModified();
+    }
 
-            @SuppressWarnings("rawtypes")
-            Class loaderClass = m_classLoader.loadClass(loaderParams.getString(LOADER_CLASS_NAME_KEY)); // load QtLoader class
-            Object qtLoader = loaderClass.newInstance(); // create an instance
-            Method perpareAppMethod=qtLoader.getClass().getMethod("loadApplication", Activity.class, ClassLoader.class, Bundle.class);
-            if (!(Boolean)perpareAppMethod.invoke(qtLoader, this, m_classLoader, loaderParams))
-                throw new Exception("");
+    // returns the loader params Ministro handed out last time, or null if there are none or
+    // anything they depend upon changed since
+    private Bundle getCachedLoaderParams()
+    {
+        try {
+            SharedPreferences preferences = getSharedPreferences(LOADER_PARAMS_PREFERENCES, Context.MODE_PRIVATE);
+            String signature = preferences.getString(LOADER_PARAMS_SIGNATURE_KEY, null);
+            if (signature == null)
+                return null;
+
+            Bundle loaderParams = new Bundle();
+            loaderParams.putInt(ERROR_CODE_KEY, 0);
+            for (String key : LOADER_PARAMS_STRING_KEYS)
+                if (preferences.contains(key))
+                    loaderParams.putString(key, preferences.getString(key, null));
+            ArrayList<String> libs = new ArrayList<String>();
+            for (String lib : preferences.getString(NATIVE_LIBRARIES_KEY, "").split("\t"))
+                if (lib.length() > 0)
+                    libs.add(lib);
+            loaderParams.putStringArrayList(NATIVE_LIBRARIES_KEY, libs);
+
+            if (!signature.equals(getLoaderParamsSignature(loaderParams)))
+            {
+                Log.i(QtApplication.QtTAG, "Cached loader params are stale, asking Ministro");
+                return null;
+            }
+            return loaderParams;
+        } catch (Exception e) {
+            Log.w(QtApplication.QtTAG, "Can't read the cached loader params", e);
+            return null;
+        }
+    }
 
-            QtApplication.setQtActivityDelegate(qtLoader);
+    // keeps the loader params Ministro handed out for the next launch, failures are not kept
+    private void saveLoaderParams(Bundle loaderParams)
+    {
+        SharedPreferences.Editor editor = getSharedPreferences(LOADER_PARAMS_PREFERENCES, Context.MODE_PRIVATE).edit();
+        editor.clear();
+        try {
+            String signature = loaderParams.getInt(ERROR_CODE_KEY) == 0 ? getLoaderParamsSignature(loaderParams) : null;
+            if (signature != null)
+            {
+                for (String key : LOADER_PARAMS_STRING_KEYS)
+                    if (loaderParams.getString(key) != null)
+                        editor.putString(key, loaderParams.getString(key));
+                StringBuilder libs = new StringBuilder();
+                if (loaderParams.getStringArrayList(NATIVE_LIBRARIES_KEY) != null)
+                    for (String lib : loaderParams.getStringArrayList(NATIVE_LIBRARIES_KEY))
+                        libs.append(lib).append('\t');
+                editor.putString(NATIVE_LIBRARIES_KEY, libs.toString());
+                editor.putString(LOADER_PARAMS_SIGNATURE_KEY, signature);
+            }
+        } catch (Exception e) {
+            Log.w(QtApplication.QtTAG, "Can't cache the loader params", e);
+        }
+        editor.commit();
+    }
 
-            Method startAppMethod=qtLoader.getClass().getMethod("startApplication");
-            if (!(Boolean)startAppMethod.invoke(qtLoader))
-                throw new Exception("");
+    private void clearLoaderParams()
+    {
+        getSharedPreferences(LOADER_PARAMS_PREFERENCES, Context.MODE_PRIVATE).edit().clear().commit();
+    }
 
+    // asks Ministro for fresh loader params for the next launch, once the application started
+    // with the cached ones
+    private void refreshLoaderParams()
+    {
+        try {
+            if (!bindService(new Intent(org.kde.necessitas.ministro.IMinistro.class.getCanonicalName()), m_ministroConnection, Context.BIND_AUTO_CREATE))
+                throw new SecurityException("");
         } catch (Exception e) {
-            e.printStackTrace();
-            AlertDialog errorDialog = new AlertDialog.Builder(QtActivity.this).create();
-            if (m_activityInfo != null && m_activityInfo.metaData.containsKey("android.app.fatal_error_msg")) {
-                errorDialog.setMessage(m_activityInfo.metaData.getString("android.app.fatal_error_msg"));
-	    } else if (e instanceof FinderException) {
-                errorDialog.setMessage(String.format("%s\n%s", "Fatal error: ", e.getMessage()));
-	    } else {
-                errorDialog.setMessage("Fatal error, your application can't be started.");
-	    }
-            errorDialog.setButton(getResources().getString(android.R.string.ok), new DialogInterface.OnClickListener() {
-                @Override
-                public void onClick(DialogInterface dialog, int which) {
-                    finish();
+            Log.w(QtApplication.QtTAG, "Can't refresh the loader params", e);
+        }
+    }
+
+    // builds the loader params for the Qt libraries under localPrefix, the extra libraries and
+    // the jars are colon separated and relative to localPrefix. QML imports and Qt plugins are
+    // looked up under importsPrefix. The loader class defaults to QtActivityDelegate.
+    private Bundle getLocalLoaderParams(String localPrefix, String importsPrefix, String extraLibs, String jars, String loaderClassName)
+    {
+        ArrayList<String> libraryList= new ArrayList<String>();
+
+        if (m_qtLibs != null)
+            for(int i=0;i<m_qtLibs.length;i++)
+            {
+                libraryList.add(localPrefix+"lib/lib"+m_qtLibs[i]+".so");
+            }
+
+        if (extraLibs != null)
+        {
+            for (String lib:extraLibs.split(":"))
+                if (lib.length()>0)
+                    libraryList.add(localPrefix+lib);
+        }
+
+        String dexPaths = new String();
+        String pathSeparator = System.getProperty("path.separator", ":");
+        if (jars != null)
+        {
+            for (String jar:jars.split(":"))
+                if (jar.length()>0)
+                {
+                    if (dexPaths.length()>0)
+                        dexPaths+=pathSeparator;
+                    dexPaths+=localPrefix+jar;
                 }
-            });
-            errorDialog.show();
         }
+
+        Bundle loaderParams = new Bundle();
+        loaderParams.putInt(ERROR_CODE_KEY, 0);
+        loaderParams.putString(DEX_PATH_KEY, dexPaths);
+        loaderParams.putString(LOADER_CLASS_NAME_KEY, loaderClassName != null
+                                                    ?loaderClassName
+                                                    :"org.kde.necessitas.industrius.QtActivityDelegate");
+        loaderParams.putStringArrayList(NATIVE_LIBRARIES_KEY, libraryList);
+        loaderParams.putString(ENVIRONMENT_VARIABLES_KEY,"QML_IMPORT_PATH="+importsPrefix+"imports\tQT_PLUGIN_PATH="+importsPrefix+"plugins");
+        loaderParams.putString(APPLICATION_PARAMETERS_KEY,"-platform\tandroid");
+        return loaderParams;
+    }
+
+    // returns the loader params for the first complete Qt installation among the libraries
+    // bundled with the application and the fallback prefix, or null if there is none. Without
+    // android.app.fallback_qt_jars no installation is complete, QtLoader needs its jars.
+    private Bundle getFallbackLoaderParams()
+    {
+        String jars = m_activityInfo.metaData.getString("android.app.fallback_qt_jars");
+        if (jars == null || jars.length() == 0)
+            return null;
+        String[] prefixes = { getApplicationInfo().dataDir + File.separator
+                            , m_activityInfo.metaData.containsKey("android.app.fallback_qt_prefix")
+                              ?m_activityInfo.metaData.getString("android.app.fallback_qt_prefix")
+                              :"/data/local/qt/" };
+        for (String prefix : prefixes)
+        {
+            Bundle loaderParams = getLocalLoaderParams(prefix, prefix, null, jars, null);
+            boolean complete = loaderParams.getString(DEX_PATH_KEY).length() > 0;
+            for (String lib : loaderParams.getStringArrayList(NATIVE_LIBRARIES_KEY))
+                complete = complete && new File(lib).exists();
+            for (String jar : loaderParams.getString(DEX_PATH_KEY).split(System.getProperty("path.separator", ":")))
+                complete = complete && (jar.length() == 0 || new File(jar).exists());
+            if (complete)
+            {
+                Log.i(QtApplication.QtTAG, "Fallback Qt libraries found in " + prefix);
+                return loaderParams;
+            }
+        }
+        return null;
     }
 
+    // starts on fallback Qt libraries if Ministro didn't answer in time, a late answer is ignored
+    private Runnable m_ministroTimeout = new Runnable() {
+        @Override
+        public void run() {
+            double elapsed = (System.nanoTime() - m_ministroStart) / 1e6;
+            Bundle loaderParams = getFallbackLoaderParams();
+            if (loaderParams == null)
+            {
+                Log.w(QtApplication.QtTAG, String.format("Ministro didn't answer in %.1f ms, no fallback Qt libraries, waiting", elapsed));
+                return;
+            }
+            Log.w(QtApplication.QtTAG, String.format("Ministro didn't answer in %.1f ms, starting with the fallback Qt libraries", elapsed));
+            m_ministroTimedOut = true;
+            try {
+                unbindService(m_ministroConnection);
+            } catch (Exception e) {
+                Log.w(QtApplication.QtTAG, "Can't unbind Ministro", e);
+            }
+            loadApplication(loaderParams);
+        }
+    };
+
     private ServiceConnection m_ministroConnection=new ServiceConnection() {
         private IMinistro m_service = null;
     @Override
@@ -225,11 +614,23 @@ public class QtActivity extends Activity
         @Override
         public void loaderReady(final Bundle loaderParams) throws RemoteException
         {
+            // on the binder thread, keeps the disk write off the UI thread
+            saveLoaderParams(loaderParams);
             runOnUiThread( new Runnable() {
                 @Override
                 public void run() {
+                    if (m_ministroTimedOut)
+                    {
+                        Log.i(QtApplication.QtTAG, String.format("Ignored Ministro's answer after %.1f ms", (System.nanoTime() - m_ministroStart) / 1e6));
+                        return;
+                    }
+                    m_handler.removeCallbacks(m_ministroTimeout);
+                    if (!m_refreshLoaderParams)
+                        Log.i(QtApplication.QtTAG, String.format("Ministro answered in %.1f ms", (System.nanoTime() - m_ministroStart) / 1e6));
                     unbindService(m_ministroConnection);
-                    loadApplication(loaderParams);
+                    // already running on the cached loader params
+                    if (!m_refreshLoaderParams)
+                        loadApplication(loaderParams);
                 }
             });
         }
@@ -273,56 +674,34 @@ public class QtActivity extends Activity
             if (getIntent().getExtras()!= null && getIntent().getExtras().containsKey("use_local_qt_libs")
                     && getIntent().getExtras().getString("use_local_qt_libs").equals("true"))
             {
-                ArrayList<String> libraryList= new ArrayList<String>();
-
-                String localPrefix="/data/local/qt/";
-                if (getIntent().getExtras().containsKey("libs_prefix"))
-                    localPrefix=getIntent().getExtras().getString("libs_prefix");
-
-                if (m_qtLibs != null)
-                    for(int i=0;i<m_qtLibs.length;i++)
-                    {
-                        libraryList.add(localPrefix+"lib/lib"+m_qtLibs[i]+".so");
-                    }
-
-                if (getIntent().getExtras().containsKey("load_local_libs"))
-                {
-                    String []extraLibs=getIntent().getExtras().getString("load_local_libs").split(":");
-                    for (String lib:extraLibs)
-                        if (lib.length()>0)
-                            libraryList.add(localPrefix+lib);
-                }
-
-                String dexPaths = new String();
-                String pathSeparator = System.getProperty("path.separator", ":");
-                if (getIntent().getExtras().containsKey("load_local_jars"))
-                {
-                    String []jarFiles=getIntent().getExtras().getString("load_local_jars").split(":");
-                    for (String jar:jarFiles)
-                        if (jar.length()>0)
-                        {
-                            if (dexPaths.length()>0)
-                                dexPaths+=pathSeparator;
-                            dexPaths+=localPrefix+jar;
-                        }
-                }
-
-                Bundle loaderParams = new Bundle();
-                loaderParams.putInt(ERROR_CODE_KEY, 0);
-                loaderParams.putString(DEX_PATH_KEY, dexPaths);
-                loaderParams.putString(LOADER_CLASS_NAME_KEY, getIntent().getExtras().containsKey("loader_class_name")
-                                                            ?getIntent().getExtras().getString("loader_class_name")
-                                                            :"org.kde.necessitas.industrius.QtActivityDelegate");
-                loaderParams.putStringArrayList(NATIVE_LIBRARIES_KEY, libraryList);
-                loaderParams.putString(ENVIRONMENT_VARIABLES_KEY,"QML_IMPORT_PATH=/data/local/qt/imports\tQT_PLUGIN_PATH=/data/local/qt/plugins");
-                loaderParams.putString(APPLICATION_PARAMETERS_KEY,"-platform\tandroid");
+                Bundle extras = getIntent().getExtras();
+                // QML imports and Qt plugins stay under /data/local/qt/, whatever libs_prefix says
+                Bundle loaderParams = getLocalLoaderParams(extras.containsKey("libs_prefix")?extras.getString("libs_prefix"):"/data/local/qt/"
+                                                          , "/data/local/qt/"
+                                                          , extras.getString("load_local_libs")
+                                                          , extras.getString("load_local_jars")
+                                                          , extras.getString("loader_class_name"));
                 loadApplication(loaderParams);
                 return;
             }
 
+            // Start with the loader params of the previous launch if still valid,
+            // Ministro is asked for fresh ones once the application is started
+            Bundle cachedParams = getCachedLoaderParams();
+            if (cachedParams != null)
+            {
+                m_refreshLoaderParams = true;
+                loadApplication(cachedParams);
+                return;
+            }
+
             try {
+                m_ministroStart = System.nanoTime();
                 if (!bindService(new Intent(org.kde.necessitas.ministro.IMinistro.class.getCanonicalName()), m_ministroConnection, Context.BIND_AUTO_CREATE))
                     throw new SecurityException("");
+                // bounds the wait for Ministro, see m_ministroTimeout
+                if (m_activityInfo != null && m_activityInfo.metaData.getInt("android.app.ministro_timeout", 0) > 0)
+                    m_handler.postDelayed(m_ministroTimeout, m_activityInfo.metaData.getInt("android.app.ministro_timeout"));
             } catch (Exception e) {
                 if (firstStart)
                 {
@@ -671,6 +1050,7 @@ public class QtActivity extends Activity
     @Override
     protected void onDestroy()
     {
+        m_handler.removeCallbacks(m_ministroTimeout);
         super.onDestroy();
         QtApplication.invokeDelegate();
     }
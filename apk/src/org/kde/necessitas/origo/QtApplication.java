@@ -27,12 +27,24 @@
 
 package org.kde.necessitas.origo;
 
+import java.io.File;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import android.app.Application;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.pm.ActivityInfo;
+import android.content.pm.PackageManager;
+import android.util.Log;
+
+import com.realworldsystems.elf.Cache;
+import com.realworldsystems.elf.ReaderException;
 
 public class QtApplication extends Application
 {
@@ -154,6 +166,81 @@ public class QtApplication extends Application
         }
     }
 
+    // the load order of the bundled libraries, resolved on a background thread
+    private static FutureTask<String[]> m_bundledLibraries = null;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // The load order only depends on the installed libraries, so resolve it
+        // while the process is still starting up, QtActivity awaits the result
+        resolveBundledLibraries(this);
+    }
+
+    // starts resolving the bundled libraries, unless it's already running or done
+    private static synchronized FutureTask<String[]> resolveBundledLibraries(Context context)
+    {
+        if (m_bundledLibraries == null) {
+            final Context appContext = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+            m_bundledLibraries = new FutureTask<String[]>(new Callable<String[]>() {
+                @Override
+                public String[] call() throws Exception {
+                    long start = System.nanoTime();
+                    ActivityInfo activityInfo = appContext.getPackageManager().getActivityInfo(new ComponentName(appContext, QtActivity.class), PackageManager.GET_META_DATA);
+                    String[] libs = QtActivity.resolveBundledLibraries(appContext, activityInfo);
+                    Log.i(QtTAG, String.format("Resolved %d bundled libraries in %.1f ms", libs.length, (System.nanoTime() - start) / 1e6));
+                    return libs;
+                }
+            });
+            new Thread(m_bundledLibraries, "BundledLibraries").start();
+        }
+        return m_bundledLibraries;
+    }
+
+    // the parsed library headers, kept between launches. One instance is shared by everything
+    // parsing libraries in this process, so its saves don't overwrite each other.
+    private static final String ELF_CACHE_FILE="elf.cache";
+    private static Cache m_elfCache = null;
+
+    // returns the ELF cache of the process
+    public static synchronized Cache getElfCache(Context context)
+    {
+        if (m_elfCache == null)
+            m_elfCache = new Cache(new File(context.getCacheDir(), ELF_CACHE_FILE));
+        return m_elfCache;
+    }
+
+    // writes the ELF cache if anything was parsed since it was read
+    public static void saveElfCache(Context context)
+    {
+        try {
+            getElfCache(context).save();
+        } catch (ReaderException e) {
+            Log.w(QtTAG, "Can't save the ELF cache", e);
+        }
+    }
+
+    // returns the load order of the bundled libraries, waiting for the resolution started by
+    // onCreate. A failed resolution is forgotten, so the next call starts a new one.
+    public static String[] getBundledLibraries(Context context) throws Exception
+    {
+        FutureTask<String[]> task = resolveBundledLibraries(context);
+        long start = System.nanoTime();
+        try {
+            String[] libs = task.get();
+            Log.i(QtTAG, String.format("Waited %.1f ms for the bundled libraries", (System.nanoTime() - start) / 1e6));
+            return libs;
+        } catch (ExecutionException e) {
+            synchronized (QtApplication.class) {
+                if (m_bundledLibraries == task)
+                    m_bundledLibraries = null;
+            }
+            if (e.getCause() instanceof Exception)
+                throw (Exception)e.getCause();
+            throw e;
+        }
+    }
+
     @Override
     public void onTerminate() {
         if (m_delegateObject != null && m_delegateMethods.containsKey("onTerminate"))
@@ -30,4 +30,5 @@ fi
 
 android update project --name qgis --path $APK_DIR
 
-ant `echo $BUILD_TYPE | tr '[:upper:]' '[:lower:]'`
+#the -pre-build step in custom_rules.xml orders the libraries of this ABI
+ant -Dbundled.libs.abi=$ANDROID_TARGET_ARCH `echo $BUILD_TYPE | tr '[:upper:]' '[:lower:]'`